@@ -0,0 +1,365 @@
+package com.sample.common;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Long-lived writer of append-only log files, replacing one open/write/close per record. Producer threads enqueue
+ * records into a lock-free queue; a single flusher thread batches them into direct buffers of BufferPool and writes
+ * each batch by one gathering write, then forces it to storage by durability policy (group commit). Files are named
+ * prefix-millis-sequence.log and roll over by size or age; a file may exceed max size by one batch.
+ */
+public class AppendLogWriter implements Closeable {
+    private static Log LOGGER = LogFactory.getLog(AppendLogWriter.class);
+
+    /**
+     * When written records are forced to storage, futures of records complete after that
+     */
+    public enum Durability {
+        /**
+         * Left to the OS, futures complete when written
+         */
+        NONE,
+        /**
+         * Forced every sync interval for all batches written meanwhile
+         */
+        GROUP,
+        /**
+         * Forced after each batch
+         */
+        BATCH
+    }
+
+    /**
+     * Size of direct buffers batching records
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Max buffers of one gathering write
+     */
+    private static final int  MAX_GATHER      = 16;
+    /**
+     * Max time (ms) flusher sleeps without records, bounding latency of age rollover
+     */
+    private static final long MAX_IDLE_MILLIS = 100L;
+
+    private static final class Record {
+        final byte[]                  data;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Record(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    private final    Path          folder;
+    private final    String        prefix;
+    private final    long          maxFileSize;
+    private final    long          maxFileAgeNanos;
+    private final    Durability    durability;
+    private final    long          syncIntervalNanos;
+    private final    int           capacity;
+    private final    Queue<Record> queue   = new ConcurrentLinkedQueue<>();
+    private final    AtomicInteger size    = new AtomicInteger();
+    private final    LongAdder     records = new LongAdder();
+    private final    LongAdder     batches = new LongAdder();
+    private final    LongAdder     syncs   = new LongAdder();
+    private final    LongAdder     bytes   = new LongAdder();
+    private final    Thread        flusher;
+    private volatile boolean       closed;
+    private volatile boolean       terminated;
+    private volatile Path          file;
+    private          FileChannel   channel;
+    private          long          fileSize;
+    private          long          fileStart;
+    private          long          sequence;
+
+    /**
+     * @param folder             Folder of log files, created if not exists
+     * @param prefix             Prefix of file names
+     * @param maxFileSize        Bytes of a file before rollover
+     * @param maxFileAgeMillis   Age (ms) of a file before rollover, not positive for no age limit
+     * @param durability         When records are forced to storage
+     * @param syncIntervalMillis Interval (ms) of forces in GROUP durability
+     * @param capacity           Max records waiting for flusher, more are rejected
+     */
+    public AppendLogWriter(Path folder, String prefix, long maxFileSize, long maxFileAgeMillis, Durability durability,
+            long syncIntervalMillis, int capacity) throws IOException {
+        if (maxFileSize <= 0 || capacity <= 0 || (durability == Durability.GROUP && syncIntervalMillis <= 0)) {
+            throw new IllegalArgumentException("Invalid log writer settings");
+        }
+        this.folder = Files.createDirectories(folder);
+        this.prefix = prefix;
+        this.maxFileSize = maxFileSize;
+        this.maxFileAgeNanos = maxFileAgeMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(maxFileAgeMillis) : Long.MAX_VALUE;
+        this.durability = durability;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        this.capacity = capacity;
+        roll();
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, "append-log-" + prefix);
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Enqueue record, bytes are written as they are, so records carry their own separators
+     *
+     * @return Future completed when record is written and forced by durability policy
+     * @throws RejectedExecutionException if writer is closed or terminated by failure, or capacity is reached
+     */
+    public CompletableFuture<Void> append(byte[] record) {
+        if (closed || terminated) {
+            throw new RejectedExecutionException("Log writer closed");
+        }
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            throw new RejectedExecutionException("Log writer queue full");
+        }
+        Record entry = new Record(record);
+        queue.offer(entry);
+        if (terminated && queue.remove(entry)) {
+            throw new RejectedExecutionException("Log writer closed");
+        }
+        LockSupport.unpark(flusher);
+        return entry.future;
+    }
+
+    /**
+     * Flusher thread: write batches until closed and queue drained. An unexpected failure fails the records taken so
+     * far and terminates the writer, so that producers are not left waiting on futures nobody completes.
+     */
+    private void flush() {
+        List<Record> batch    = new ArrayList<>();
+        List<Record> unsynced = new ArrayList<>();
+        try {
+            flush(batch, unsynced);
+        } catch (RuntimeException | Error e) {
+            LOGGER.error("Log writer flusher failed, writer terminated", e);
+            complete(batch, e);
+            complete(unsynced, e);
+            if (e instanceof Error) {
+                throw e;
+            }
+        } finally {
+            // Records enqueued while closing or after a failure, their producers missed the flags
+            terminated = true;
+            Record record;
+            while ((record = queue.poll()) != null) {
+                record.future.completeExceptionally(new RejectedExecutionException("Log writer terminated"));
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Written records are already completed
+            }
+        }
+    }
+
+    private void flush(List<Record> batch, List<Record> unsynced) {
+        List<ByteBuffer> buffers  = new ArrayList<>();
+        long             lastSync = System.nanoTime();
+        while (true) {
+            boolean closing = closed;
+            fill(batch, buffers);
+            if (!batch.isEmpty()) {
+                try {
+                    if (fileSize >= maxFileSize || System.nanoTime() - fileStart >= maxFileAgeNanos) {
+                        complete(unsynced, sync());
+                        roll();
+                        lastSync = System.nanoTime();
+                    }
+                    write(buffers);
+                    if (durability == Durability.BATCH) {
+                        complete(batch, sync());
+                    } else if (durability == Durability.GROUP) {
+                        unsynced.addAll(batch);
+                    } else {
+                        complete(batch, null);
+                    }
+                } catch (IOException e) {
+                    complete(batch, e);
+                }
+                batch.clear();
+                for (ByteBuffer buffer : buffers) {
+                    if (buffer.isDirect()) {
+                        BufferPool.DEFAULT.release(buffer);
+                    }
+                }
+                buffers.clear();
+            }
+            long now = System.nanoTime();
+            if (!unsynced.isEmpty() && (now - lastSync >= syncIntervalNanos || closing && queue.isEmpty())) {
+                complete(unsynced, sync());
+                lastSync = now;
+            }
+            if (closing && queue.isEmpty()) {
+                break;
+            }
+            if (queue.isEmpty()) {
+                long idle = TimeUnit.MILLISECONDS.toNanos(MAX_IDLE_MILLIS);
+                LockSupport.parkNanos(this, unsynced.isEmpty() ? idle
+                        : Math.min(idle, syncIntervalNanos - (now - lastSync)));
+            }
+        }
+    }
+
+    /**
+     * Take queued records into batch, copying them into pooled buffers; a record larger than a buffer is written by
+     * its own array
+     */
+    private void fill(List<Record> batch, List<ByteBuffer> buffers) {
+        ByteBuffer current = null;
+        Record     record;
+        while (buffers.size() < MAX_GATHER && (record = queue.poll()) != null) {
+            size.decrementAndGet();
+            batch.add(record);
+            if (record.data.length > BUFFER_SIZE) {
+                if (current != null) {
+                    current.flip();
+                    current = null;
+                }
+                buffers.add(ByteBuffer.wrap(record.data));
+                continue;
+            }
+            if (current == null || current.remaining() < record.data.length) {
+                if (current != null) {
+                    current.flip();
+                }
+                current = BufferPool.DEFAULT.acquire(BUFFER_SIZE);
+                buffers.add(current);
+            }
+            current.put(record.data);
+        }
+        if (current != null) {
+            current.flip();
+        }
+    }
+
+    private void write(List<ByteBuffer> buffers) throws IOException {
+        ByteBuffer[] array = buffers.toArray(new ByteBuffer[buffers.size()]);
+        ByteBuffer   last  = array[array.length - 1];
+        while (last.hasRemaining()) {
+            long written = channel.write(array);
+            fileSize += written;
+            bytes.add(written);
+        }
+        batches.increment();
+    }
+
+    /**
+     * @return Failure of force, null if succeeded or not required
+     */
+    private IOException sync() {
+        if (durability == Durability.NONE) {
+            return null;
+        }
+        try {
+            channel.force(false);
+            syncs.increment();
+            return null;
+        } catch (IOException e) {
+            return e;
+        }
+    }
+
+    private void complete(List<Record> list, Throwable failure) {
+        for (Record record : list) {
+            if (failure == null) {
+                records.increment();
+                record.future.complete(null);
+            } else {
+                record.future.completeExceptionally(failure);
+            }
+        }
+        list.clear();
+    }
+
+    /**
+     * Close current file if any and open a new one
+     */
+    private void roll() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        long millis = System.currentTimeMillis();
+        file = folder.resolve(prefix + "-" + millis + "-" + sequence++ + ".log");
+        channel = FileChannel.open(file, IoUtil.APPEND_OPTIONS);
+        fileSize = channel.size();
+        fileStart = System.nanoTime();
+    }
+
+    /**
+     * Current log file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Records written and forced by durability policy
+     */
+    public long getRecordCount() {
+        return records.sum();
+    }
+
+    /**
+     * Gathering writes, each of one or more records
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getSyncCount() {
+        return syncs.sum();
+    }
+
+    public long getByteCount() {
+        return bytes.sum();
+    }
+
+    /**
+     * Records waiting for flusher
+     */
+    public int getQueued() {
+        return size.get();
+    }
+
+    /**
+     * Reject new records, then wait until flusher has written and forced the queued ones
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for flusher");
+        }
+    }
+}
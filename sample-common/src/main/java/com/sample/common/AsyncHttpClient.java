@@ -0,0 +1,208 @@
+package com.sample.common;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Async http client created by HttpAsyncClientManager, limiting in-flight requests per route(scheme://host:port):
+ * requests over the limit wait in a queue of the route and are sent when earlier ones complete, so no thread is
+ * parked for them. Futures are completed on I/O reactor threads, dependent actions should not block.
+ */
+public class AsyncHttpClient implements Closeable {
+    private final CloseableHttpAsyncClient       client;
+    private final int                            maxInFlight;
+    private final int                            maxQueued;
+    private final ConcurrentMap<HttpHost, Route> routes = new ConcurrentHashMap<>();
+
+    private static final class Route {
+        final AtomicInteger                   inFlight = new AtomicInteger();
+        final AtomicInteger                   queued   = new AtomicInteger();
+        final ConcurrentLinkedQueue<Exchange> waiting  = new ConcurrentLinkedQueue<>();
+    }
+
+    private static final class Exchange {
+        final HttpUriRequest                  request;
+        final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+
+        Exchange(HttpUriRequest request) {
+            this.request = request;
+        }
+    }
+
+    AsyncHttpClient(CloseableHttpAsyncClient client, int maxInFlight, int maxQueued) {
+        if (maxInFlight <= 0 || maxQueued < 0) {
+            throw new IllegalArgumentException("Invalid in-flight or queue limit");
+        }
+        this.client = client;
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+    }
+
+    void start() {
+        client.start();
+    }
+
+    /**
+     * Send request without blocking, cancelling the future aborts the request
+     *
+     * @return Future of response with entity buffered in memory
+     */
+    public CompletableFuture<HttpResponse> execute(HttpUriRequest request) {
+        Exchange exchange = new Exchange(request);
+        Route    route    = routeOf(request);
+        if (route.queued.incrementAndGet() > maxQueued && route.inFlight.get() >= maxInFlight) {
+            route.queued.decrementAndGet();
+            exchange.result.completeExceptionally(
+                    new RejectedExecutionException("Too many requests waiting for " + request.getURI().getHost()));
+            return exchange.result;
+        }
+        route.waiting.add(exchange);
+        drain(route);
+        return exchange.result;
+    }
+
+    /**
+     * Requests sent and not completed for the route of host
+     */
+    public int getInFlight(HttpHost host) {
+        Route route = routes.get(normalize(host));
+        return route == null ? 0 : route.inFlight.get();
+    }
+
+    /**
+     * Requests waiting for the in-flight limit of the route of host
+     */
+    public int getQueued(HttpHost host) {
+        Route route = routes.get(normalize(host));
+        return route == null ? 0 : route.queued.get();
+    }
+
+    private Route routeOf(HttpUriRequest request) {
+        HttpHost host  = normalize(URIUtils.extractHost(request.getURI()));
+        Route    route = routes.get(host);
+        if (route == null) {
+            Route created = new Route();
+            route = routes.putIfAbsent(host, created);
+            if (route == null) {
+                route = created;
+            }
+        }
+        return route;
+    }
+
+    private static HttpHost normalize(HttpHost host) {
+        if (host == null) {
+            throw new IllegalArgumentException("Request uri should be absolute");
+        }
+        if (host.getPort() >= 0) {
+            return host;
+        }
+        return new HttpHost(host.getHostName(), "https".equalsIgnoreCase(host.getSchemeName()) ? 443 : 80,
+                            host.getSchemeName());
+    }
+
+    /**
+     * Send waiting requests while the route is under its limit. Completion decreases the counter before draining,
+     * so a request queued concurrently is sent by either its own call or the completing one.
+     */
+    private void drain(Route route) {
+        while (!route.waiting.isEmpty()) {
+            int inFlight = route.inFlight.get();
+            if (inFlight >= maxInFlight) {
+                return;
+            }
+            if (!route.inFlight.compareAndSet(inFlight, inFlight + 1)) {
+                continue;
+            }
+            Exchange exchange = route.waiting.poll();
+            if (exchange == null) {
+                route.inFlight.decrementAndGet();
+                continue;
+            }
+            route.queued.decrementAndGet();
+            if (exchange.result.isDone()) {
+                // Cancelled while waiting
+                route.inFlight.decrementAndGet();
+                continue;
+            }
+            send(route, exchange);
+        }
+    }
+
+    private void send(final Route route, final Exchange exchange) {
+        final CompletableFuture<HttpResponse> result = exchange.result;
+        FutureCallback<HttpResponse> callback = new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                release(route);
+                result.complete(response);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                release(route);
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                release(route);
+                result.cancel(false);
+            }
+        };
+        final Future<HttpResponse> future;
+        try {
+            future = client.execute(exchange.request, callback);
+        } catch (RuntimeException e) {
+            release(route);
+            result.completeExceptionally(e);
+            return;
+        }
+        result.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+            @Override
+            public void accept(HttpResponse response, Throwable throwable) {
+                if (result.isCancelled()) {
+                    future.cancel(true);
+                }
+            }
+        });
+    }
+
+    private void release(Route route) {
+        route.inFlight.decrementAndGet();
+        drain(route);
+    }
+
+    /**
+     * Close client and its pool, requests still waiting are completed exceptionally
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            client.close();
+        } finally {
+            for (Route route : routes.values()) {
+                Exchange exchange;
+                while ((exchange = route.waiting.poll()) != null) {
+                    route.queued.decrementAndGet();
+                    exchange.result.completeExceptionally(new IllegalStateException("Client closed"));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.sample.common;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of direct buffers in size classes of powers of two. Released buffers go to a small cache of the releasing
+ * thread, then to a global free list per class; sizes over the largest class are allocated without pooling.
+ * Outstanding buffers are always tracked by identity, so double, foreign or heap buffer releases fail instead of
+ * handing one buffer to two owners; in debug mode their allocation sites are kept too, so leaks can be listed by
+ * getLeaks.
+ */
+public class BufferPool {
+    /**
+     * Shared pool, debug mode is enabled by system property sample.bufferPool.debug=true
+     */
+    public static final BufferPool DEFAULT = new BufferPool(4 * 1024, 1024 * 1024, 64,
+                                                            Boolean.getBoolean("sample.bufferPool.debug"));
+
+    /**
+     * Buffers per class cached by each thread
+     */
+    private static final int THREAD_CACHE_SIZE = 2;
+
+    /**
+     * Stripes of outstanding buffer tracking, power of two
+     */
+    private static final int STRIPES = 16;
+
+    /**
+     * Value of outstanding buffer when not in debug mode
+     */
+    private static final Object ACQUIRED = new Object();
+
+    private final int                           minShift;
+    private final int                           maxShift;
+    private final int                           maxPooledPerClass;
+    private final boolean                       debug;
+    private final List<Queue<ByteBuffer>>       freeLists;
+    private final AtomicIntegerArray            freeCounts;
+    private final ThreadLocal<ByteBuffer[][]>   threadCaches;
+    // Outstanding buffers by identity (ByteBuffer.equals compares content), striped to spread contention; values
+    // are allocation sites in debug mode, ACQUIRED otherwise
+    private final List<Map<ByteBuffer, Object>> outstanding;
+    private final LongAdder                     hits             = new LongAdder();
+    private final LongAdder                     misses           = new LongAdder();
+    private final LongAdder                     outstandingBytes = new LongAdder();
+
+    /**
+     * @param minSize           Size (bytes) of the smallest class, rounded up to power of two
+     * @param maxSize           Size (bytes) of the largest class, rounded up to power of two
+     * @param maxPooledPerClass Max buffers per class in global free list
+     * @param debug             Keep allocation sites of outstanding buffers
+     */
+    public BufferPool(int minSize, int maxSize, int maxPooledPerClass, boolean debug) {
+        if (minSize <= 0 || maxSize < minSize || maxSize > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid buffer sizes");
+        }
+        this.minShift = shiftOf(minSize);
+        this.maxShift = shiftOf(maxSize);
+        this.maxPooledPerClass = maxPooledPerClass;
+        this.debug = debug;
+        final int classes = maxShift - minShift + 1;
+        this.freeLists = new ArrayList<>(classes);
+        for (int i = 0; i < classes; i++) {
+            freeLists.add(new ConcurrentLinkedQueue<ByteBuffer>());
+        }
+        this.freeCounts = new AtomicIntegerArray(classes);
+        this.threadCaches = new ThreadLocal<ByteBuffer[][]>() {
+            @Override
+            protected ByteBuffer[][] initialValue() {
+                return new ByteBuffer[classes][THREAD_CACHE_SIZE];
+            }
+        };
+        this.outstanding = new ArrayList<>(STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            outstanding.add(new IdentityHashMap<ByteBuffer, Object>());
+        }
+    }
+
+    private static int shiftOf(int size) {
+        return size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    /**
+     * Take a cleared buffer of at least size bytes, its limit is set to size; must be given back by release
+     */
+    public ByteBuffer acquire(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Invalid buffer size");
+        }
+        int        index  = Math.max(shiftOf(size), minShift) - minShift;
+        ByteBuffer buffer = null;
+        if (index < freeLists.size()) {
+            ByteBuffer[] cache = threadCaches.get()[index];
+            for (int i = 0; i < cache.length && buffer == null; i++) {
+                buffer = cache[i];
+                cache[i] = null;
+            }
+            if (buffer == null) {
+                buffer = freeLists.get(index).poll();
+                if (buffer != null) {
+                    freeCounts.decrementAndGet(index);
+                }
+            }
+        }
+        if (buffer == null) {
+            misses.increment();
+            buffer = ByteBuffer.allocateDirect(index < freeLists.size() ? 1 << (index + minShift) : size);
+        } else {
+            hits.increment();
+        }
+        buffer.clear();
+        buffer.limit(size);
+        outstandingBytes.add(buffer.capacity());
+        Map<ByteBuffer, Object> stripe = stripeOf(buffer);
+        Object                  site   = debug ? new Throwable("Buffer of " + buffer.capacity() + " bytes acquired")
+                : ACQUIRED;
+        synchronized (stripe) {
+            stripe.put(buffer, site);
+        }
+        return buffer;
+    }
+
+    private Map<ByteBuffer, Object> stripeOf(ByteBuffer buffer) {
+        return outstanding.get(System.identityHashCode(buffer) & (STRIPES - 1));
+    }
+
+    /**
+     * Give back buffer taken by acquire, it must not be used any more
+     *
+     * @throws IllegalArgumentException If buffer is not direct
+     * @throws IllegalStateException    If buffer was not acquired from this pool or is already released
+     */
+    public void release(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("Heap buffer not acquired from this pool");
+        }
+        Map<ByteBuffer, Object> stripe = stripeOf(buffer);
+        Object                  site;
+        synchronized (stripe) {
+            site = stripe.remove(buffer);
+        }
+        if (site == null) {
+            throw new IllegalStateException("Buffer not acquired from this pool or already released");
+        }
+        outstandingBytes.add(-buffer.capacity());
+        int capacity = buffer.capacity();
+        int index    = shiftOf(capacity) - minShift;
+        if (index < 0 || index >= freeLists.size() || capacity != 1 << (index + minShift)) {
+            return;
+        }
+        ByteBuffer[] cache = threadCaches.get()[index];
+        for (int i = 0; i < cache.length; i++) {
+            if (cache[i] == null) {
+                cache[i] = buffer;
+                return;
+            }
+        }
+        if (freeCounts.incrementAndGet(index) <= maxPooledPerClass) {
+            freeLists.get(index).offer(buffer);
+        } else {
+            freeCounts.decrementAndGet(index);
+        }
+    }
+
+    /**
+     * Acquires served by pooled buffers
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Acquires which allocated a new buffer
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Capacity of acquired buffers not yet released
+     */
+    public long getOutstandingBytes() {
+        return outstandingBytes.sum();
+    }
+
+    /**
+     * Allocation sites of outstanding buffers, empty if not in debug mode
+     */
+    public List<Throwable> getLeaks() {
+        if (!debug) {
+            return Collections.emptyList();
+        }
+        List<Throwable> leaks = new ArrayList<>();
+        for (Map<ByteBuffer, Object> stripe : outstanding) {
+            synchronized (stripe) {
+                for (Object site : stripe.values()) {
+                    leaks.add((Throwable) site);
+                }
+            }
+        }
+        return leaks;
+    }
+}
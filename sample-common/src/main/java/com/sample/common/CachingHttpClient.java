@@ -0,0 +1,192 @@
+package com.sample.common;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.cache.CacheResponseStatus;
+import org.apache.http.client.cache.HttpCacheContext;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.apache.http.impl.client.cache.CachingHttpClients;
+import org.apache.http.impl.client.cache.ManagedHttpCacheStorage;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Http client with private response cache (Cache-Control, ETag/If-None-Match revalidation, stale-while-revalidate
+ * by background workers), created by HttpClientManager.createCachingHttpClient. Bodies are kept in heap or in memory
+ * mapped files by size. Concurrent GETs of the same uri are coalesced: one goes upstream, the others wait for it and
+ * are then answered by cache if the response was cacheable. Like HedgingHttpClient it wraps the client rather than
+ * being an HttpClient, whose interface still carries the deprecated params and connection manager.
+ */
+public class CachingHttpClient implements Closeable {
+    /**
+     * Background workers revalidating stale entries served under stale-while-revalidate
+     */
+    private static final int REVALIDATION_WORKERS = 2;
+
+    private final CloseableHttpClient                   client;
+    private final ManagedHttpCacheStorage               storage;
+    private final ConcurrentMap<String, CountDownLatch> inFlight   = new ConcurrentHashMap<>();
+    private final LongAdder                             requests   = new LongAdder();
+    private final LongAdder                             hits       = new LongAdder();
+    private final LongAdder                             validated  = new LongAdder();
+    private final LongAdder                             coalesced  = new LongAdder();
+    private final LongAdder                             bytesSaved = new LongAdder();
+
+    /**
+     * @param folder          Folder of disk tier
+     * @param maxEntries      Max cached responses of both tiers
+     * @param memoryThreshold Max body size (bytes) kept in heap, larger bodies go to disk tier
+     * @param maxObjectSize   Max body size (bytes) cached
+     */
+    CachingHttpClient(PoolingHttpClientConnectionManager manager, RequestConfig requestConfig, Path folder,
+            int maxEntries, int memoryThreshold, long maxObjectSize) throws IOException {
+        CacheConfig config = CacheConfig.custom()
+                                        .setMaxCacheEntries(maxEntries)
+                                        .setMaxObjectSize(maxObjectSize)
+                                        .setSharedCache(false)
+                                        .setAsynchronousWorkersMax(REVALIDATION_WORKERS)
+                                        .build();
+        this.storage = new ManagedHttpCacheStorage(config);
+        this.client = CachingHttpClients.custom()
+                                        .setCacheConfig(config)
+                                        .setHttpCacheStorage(storage)
+                                        .setResourceFactory(new TieredResourceFactory(folder, memoryThreshold))
+                                        .setConnectionManager(manager)
+                                        .setDefaultRequestConfig(requestConfig)
+                                        .build();
+    }
+
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        return execute(request, null);
+    }
+
+    public CloseableHttpResponse execute(HttpUriRequest request, HttpContext context) throws IOException {
+        return execute(URIUtils.extractHost(request.getURI()), request, context);
+    }
+
+    /**
+     * @param target  Host of request, null if request has an absolute uri
+     * @param context Context of request, adapted to HttpCacheContext; null for a new one
+     */
+    public CloseableHttpResponse execute(HttpHost target, HttpRequest request, HttpContext context)
+            throws IOException {
+        HttpCacheContext cacheContext = HttpCacheContext.adapt(context == null ? new BasicHttpContext() : context);
+        String           key          = "GET".equals(request.getRequestLine().getMethod()) ? keyOf(target, request)
+                : null;
+        CloseableHttpResponse response;
+        if (key == null) {
+            response = client.execute(target, request, cacheContext);
+        } else {
+            CountDownLatch latch  = new CountDownLatch(1);
+            CountDownLatch leader = inFlight.putIfAbsent(key, latch);
+            if (leader == null) {
+                try {
+                    response = client.execute(target, request, cacheContext);
+                } finally {
+                    inFlight.remove(key, latch);
+                    latch.countDown();
+                }
+            } else {
+                coalesced.increment();
+                try {
+                    leader.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for coalesced request");
+                }
+                response = client.execute(target, request, cacheContext);
+            }
+        }
+        record(cacheContext.getCacheResponseStatus(), response);
+        storage.cleanResources();
+        return response;
+    }
+
+    private static String keyOf(HttpHost target, HttpRequest request) {
+        String uri = request.getRequestLine().getUri();
+        return target != null && uri.startsWith("/") ? target.toURI() + uri : uri;
+    }
+
+    private void record(CacheResponseStatus status, CloseableHttpResponse response) {
+        requests.increment();
+        if (status == CacheResponseStatus.CACHE_HIT) {
+            hits.increment();
+        } else if (status == CacheResponseStatus.VALIDATED) {
+            validated.increment();
+        } else {
+            return;
+        }
+        HttpEntity entity = response.getEntity();
+        if (entity != null && entity.getContentLength() > 0) {
+            bytesSaved.add(entity.getContentLength());
+        }
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Responses served by cache without upstream request
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Responses served by cache after upstream answered 304
+     */
+    public long getValidatedCount() {
+        return validated.sum();
+    }
+
+    /**
+     * Requests which waited for a concurrent request of the same uri
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Ratio of responses served by cache, including revalidated ones
+     */
+    public double getHitRatio() {
+        long count = requests.sum();
+        return count == 0 ? 0.0 : (double) (hits.sum() + validated.sum()) / count;
+    }
+
+    /**
+     * Body bytes served by cache instead of transferred from upstream
+     */
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    /**
+     * Close client and its pool, then dispose cached bodies
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            client.close();
+        } finally {
+            storage.shutdown();
+        }
+    }
+}
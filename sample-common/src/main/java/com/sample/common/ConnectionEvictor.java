@@ -0,0 +1,154 @@
+package com.sample.common;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.nio.conn.NHttpClientConnectionManager;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Daemon closing expired connections(over time to live or keep-alive duration) and connections idle beyond a
+ * threshold in the pools it owns, so that sockets dropped by server or load balancer while idle are not leased.
+ * Closing the evictor stops the daemon and shuts down its pools.
+ */
+public class ConnectionEvictor implements AutoCloseable {
+    private static Log LOGGER = LogFactory.getLog(ConnectionEvictor.class);
+
+    /**
+     * Default interval of eviction (ms)
+     */
+    private static final long INTERVAL = 5000;
+    /**
+     * Default idle time (ms) before connection closed, should be less than idle timeout of servers and load balancers
+     */
+    private static final long MAX_IDLE = 30000;
+
+    /**
+     * Blocking or async pool
+     */
+    private interface Pool {
+        void evict(long maxIdleMillis);
+
+        void shutdown() throws IOException;
+    }
+
+    private final List<Pool>               pools = new CopyOnWriteArrayList<>();
+    private final long                     intervalMillis;
+    private final long                     maxIdleMillis;
+    private       ScheduledExecutorService scheduler;
+
+    /**
+     * @param intervalMillis Interval of eviction (ms)
+     * @param maxIdleMillis  Connections idle longer than it are closed (ms)
+     */
+    public ConnectionEvictor(long intervalMillis, long maxIdleMillis) {
+        this.intervalMillis = intervalMillis;
+        this.maxIdleMillis = maxIdleMillis;
+    }
+
+    public ConnectionEvictor() {
+        this(INTERVAL, MAX_IDLE);
+    }
+
+    public ConnectionEvictor register(final HttpClientConnectionManager manager) {
+        pools.add(new Pool() {
+            @Override
+            public void evict(long maxIdleMillis) {
+                manager.closeExpiredConnections();
+                manager.closeIdleConnections(maxIdleMillis, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public void shutdown() {
+                manager.shutdown();
+            }
+        });
+        return this;
+    }
+
+    public ConnectionEvictor register(final NHttpClientConnectionManager manager) {
+        pools.add(new Pool() {
+            @Override
+            public void evict(long maxIdleMillis) {
+                manager.closeExpiredConnections();
+                manager.closeIdleConnections(maxIdleMillis, TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public void shutdown() throws IOException {
+                manager.shutdown();
+            }
+        });
+        return this;
+    }
+
+    public synchronized ConnectionEvictor start() {
+        if (scheduler != null) {
+            return this;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "connection-evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evict();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Close expired and idle connections of all pools now
+     */
+    public void evict() {
+        for (Pool pool : pools) {
+            try {
+                pool.evict(maxIdleMillis);
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to evict connections", e);
+            }
+        }
+    }
+
+    /**
+     * Stop eviction, wait for the running one, then shut down all pools; if interrupted while waiting, pools are
+     * still shut down and the interrupt status is kept
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = scheduler;
+            scheduler = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(intervalMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Pool pool : pools) {
+            try {
+                pool.shutdown();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Failed to shut down pool", e);
+            }
+        }
+        pools.clear();
+    }
+}
@@ -0,0 +1,283 @@
+package com.sample.common;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mirrors a directory tree into another by IoUtil.copy/secureCopy. Files whose size and modified time already match
+ * are skipped; in checksum mode files of same size are also compared chunk by chunk and skipped if equal. Changed
+ * files are copied in parallel on a fork-join pool with bounded concurrent copies; the walk waits when the bound is
+ * reached, so memory stays flat for any number of files. Files only in target are kept. Symbolic links are not
+ * followed: links, and other entries which are not regular files or directories, are neither copied nor compared,
+ * only counted in Result.others.
+ */
+public class DirectorySync {
+    /**
+     * Size of chunks compared in checksum mode
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Outcome of a sync
+     */
+    public static class Result {
+        /**
+         * Regular files found in source
+         */
+        public final long files;
+        public final long copied;
+        public final long skipped;
+        /**
+         * Bytes of copied files
+         */
+        public final long bytes;
+        /**
+         * Symbolic links and other entries of source which are not regular files, left out of the sync
+         */
+        public final long others;
+        public final long elapsedNanos;
+
+        Result(long files, long copied, long skipped, long bytes, long others, long elapsedNanos) {
+            this.files = files;
+            this.copied = copied;
+            this.skipped = skipped;
+            this.bytes = bytes;
+            this.others = others;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Source files processed per second
+         */
+        public double getFilesPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : files * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Bytes copied per second
+         */
+        public double getBytesPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : bytes * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d files(%d copied, %d skipped), %d others, %d bytes in %d ms, %.1f files/s, "
+                                 + "%.1f MB/s", files, copied, skipped, others, bytes,
+                                 TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getFilesPerSecond(),
+                                 getBytesPerSecond() / (1 << 20));
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final int          maxConcurrentCopies;
+    private final boolean      secure;
+    private final boolean      checksum;
+
+    /**
+     * @param pool                Pool running comparisons and copies, which block on I/O; null for a pool of
+     *                            maxConcurrentCopies threads per sync
+     * @param maxConcurrentCopies Max files compared or copied at the same time
+     * @param secure              Copy by IoUtil.secureCopy and create directories by IoUtil.secureCreateDirectories,
+     *                            with owner only POSIX/ACL permissions
+     * @param checksum            Compare content of files with same size but different modified time
+     */
+    public DirectorySync(ForkJoinPool pool, int maxConcurrentCopies, boolean secure, boolean checksum) {
+        if (maxConcurrentCopies <= 0) {
+            throw new IllegalArgumentException("Invalid max concurrent copies");
+        }
+        this.pool = pool;
+        this.maxConcurrentCopies = maxConcurrentCopies;
+        this.secure = secure;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Sync on own pool per sync with concurrent copies bounded by processors, so that blocking I/O stays off the
+     * common pool
+     */
+    public DirectorySync() {
+        this(null, Runtime.getRuntime().availableProcessors(), false, false);
+    }
+
+    /**
+     * Make target tree contain every file of source tree with same content and modified time
+     *
+     * @throws IOException the first failure, other failures are suppressed by it; the walk stops after a failure
+     */
+    public Result sync(final Path from, final Path to) throws IOException {
+        final long               start    = System.nanoTime();
+        final Semaphore          permits  = new Semaphore(maxConcurrentCopies);
+        final Phaser             running  = new Phaser(1);
+        final Queue<IOException> failures = new ConcurrentLinkedQueue<>();
+        final LongAdder          files    = new LongAdder();
+        final LongAdder          copied   = new LongAdder();
+        final LongAdder          bytes    = new LongAdder();
+        final LongAdder          others   = new LongAdder();
+        final ForkJoinPool       executor = pool == null ? new ForkJoinPool(maxConcurrentCopies) : pool;
+        try {
+            Files.walkFileTree(from, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    Path target = to.resolve(from.relativize(dir).toString());
+                    if (secure) {
+                        IoUtil.secureCreateDirectories(target);
+                    } else {
+                        Files.createDirectories(target);
+                    }
+                    return failures.isEmpty() ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+                        throws IOException {
+                    if (!attrs.isRegularFile()) {
+                        others.increment();
+                        return FileVisitResult.CONTINUE;
+                    }
+                    files.increment();
+                    final Path target = to.resolve(from.relativize(file).toString());
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted waiting for copies");
+                    }
+                    running.register();
+                    try {
+                        executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    if (!isSame(file, attrs, target)) {
+                                        copy(file, attrs, target);
+                                        copied.increment();
+                                        bytes.add(attrs.size());
+                                    }
+                                } catch (IOException e) {
+                                    failures.add(e);
+                                } catch (RuntimeException e) {
+                                    failures.add(new IOException("Failed to sync " + file, e));
+                                } finally {
+                                    permits.release();
+                                    running.arriveAndDeregister();
+                                }
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        permits.release();
+                        running.arriveAndDeregister();
+                        failures.add(new IOException("Failed to schedule sync of " + file, e));
+                    }
+                    return failures.isEmpty() ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+                }
+            });
+        } catch (IOException e) {
+            failures.add(e);
+        } finally {
+            running.arriveAndAwaitAdvance();
+            if (executor != pool) {
+                executor.shutdown();
+            }
+        }
+        IOException failure = failures.poll();
+        if (failure != null) {
+            for (IOException e : failures) {
+                failure.addSuppressed(e);
+            }
+            throw failure;
+        }
+        long count = files.sum();
+        return new Result(count, copied.sum(), count - copied.sum(), bytes.sum(), others.sum(),
+                          System.nanoTime() - start);
+    }
+
+    /**
+     * Same size and modified time, or same size and content in checksum mode; modified time of target is then fixed
+     */
+    private boolean isSame(Path file, BasicFileAttributes attrs, Path target) throws IOException {
+        BasicFileAttributes targetAttrs;
+        try {
+            targetAttrs = Files.readAttributes(target, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (!targetAttrs.isRegularFile() || targetAttrs.size() != attrs.size()) {
+            return false;
+        }
+        if (targetAttrs.lastModifiedTime().equals(attrs.lastModifiedTime())) {
+            return true;
+        }
+        if (checksum && isSameContent(file, target)) {
+            Files.setLastModifiedTime(target, attrs.lastModifiedTime());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Compare chunks in order, stopping at the first different chunk
+     */
+    private static boolean isSameContent(Path file, Path target) throws IOException {
+        ByteBuffer fromBuffer = BufferPool.DEFAULT.acquire(CHUNK_SIZE);
+        ByteBuffer toBuffer   = BufferPool.DEFAULT.acquire(CHUNK_SIZE);
+        try (FileChannel fromChannel = FileChannel.open(file, IoUtil.READ_OPTIONS);
+             FileChannel toChannel = FileChannel.open(target, IoUtil.READ_OPTIONS)
+        ) {
+            while (true) {
+                int fromRead = readChunk(fromChannel, fromBuffer);
+                int toRead   = readChunk(toChannel, toBuffer);
+                if (fromRead != toRead) {
+                    return false;
+                }
+                if (fromRead == 0) {
+                    return true;
+                }
+                if (!fromBuffer.equals(toBuffer)) {
+                    return false;
+                }
+            }
+        } finally {
+            BufferPool.DEFAULT.release(fromBuffer);
+            BufferPool.DEFAULT.release(toBuffer);
+        }
+    }
+
+    /**
+     * Fill buffer as far as possible and flip it
+     */
+    private static int readChunk(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read >= 0 && buffer.hasRemaining());
+        buffer.flip();
+        return buffer.remaining();
+    }
+
+    private void copy(Path file, BasicFileAttributes attrs, Path target) throws IOException {
+        if (secure) {
+            IoUtil.secureCopy(file, target);
+        } else {
+            IoUtil.copy(file, target);
+        }
+        Files.setLastModifiedTime(target, attrs.lastModifiedTime());
+    }
+}
@@ -0,0 +1,271 @@
+package com.sample.common;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.util.EntityUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wrapper of http client created by HttpClientManager, for calls with a deadline:
+ * - Remaining time of the deadline becomes connect/socket/connection request timeout of each attempt
+ * - Hedging: if an idempotent request(GET/HEAD/OPTIONS) is not answered within p95 latency, a duplicate is sent and
+ * the first response wins, the other attempt is aborted
+ * - Retry: idempotent request failed by I/O error is retried while deadline not reached
+ * Hedges and retries both take tokens of the retry budget. Attempts run on the given executor, which needs about 2
+ * threads per concurrent call.
+ */
+public class HedgingHttpClient {
+    /**
+     * Latency samples needed before p95 is used as hedge delay
+     */
+    private static final int MIN_SAMPLES = 100;
+
+    private final HttpClient       client;
+    private final RequestConfig    defaultConfig;
+    private final ExecutorService  executor;
+    private final RetryBudget      budget;
+    private final long             initialHedgeDelayMillis;
+    private final int              maxAttempts;
+    private final LatencyHistogram latencyMillis = new LatencyHistogram();
+    private final LongAdder        hedges        = new LongAdder();
+    private final LongAdder        hedgeWins     = new LongAdder();
+    private final LongAdder        retries       = new LongAdder();
+    private final LongAdder        deadlines     = new LongAdder();
+
+    /**
+     * @param client                  Client created by HttpClientManager
+     * @param defaultConfig           Config of requests without own config, timeouts are upper bounds of attempts
+     * @param executor                Executor running attempts
+     * @param budget                  Budget of hedges and retries, may be shared by clients of the same backend
+     * @param initialHedgeDelayMillis Hedge delay before enough latency samples, Eg: SLA of the backend
+     * @param maxAttempts             Max attempts per call, including hedges and retries, 1 disables both
+     */
+    public HedgingHttpClient(HttpClient client, RequestConfig defaultConfig, ExecutorService executor,
+            RetryBudget budget, long initialHedgeDelayMillis, int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("Invalid max attempts");
+        }
+        this.client = client;
+        this.defaultConfig = defaultConfig;
+        this.executor = executor;
+        this.budget = budget;
+        this.initialHedgeDelayMillis = initialHedgeDelayMillis;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Attempts started by one call, result is completed by the first response, or by the last failure when no
+     * attempt is running
+     */
+    private static final class Call {
+        final    CompletableFuture<HttpResponse> result   = new CompletableFuture<>();
+        final    List<HttpUriRequest>            attempts = new CopyOnWriteArrayList<>();
+        final    AtomicInteger                   running  = new AtomicInteger();
+        volatile HttpUriRequest                  winner;
+
+        void abortOthers() {
+            for (HttpUriRequest attempt : attempts) {
+                if (attempt != winner) {
+                    attempt.abort();
+                }
+            }
+        }
+
+        /**
+         * Give up the call: abort all attempts, a response arriving later is released by its attempt
+         */
+        void discard(Exception e) {
+            if (!result.completeExceptionally(e) && !result.isCompletedExceptionally()) {
+                release(result.join());
+            }
+            for (HttpUriRequest attempt : attempts) {
+                attempt.abort();
+            }
+        }
+    }
+
+    /**
+     * Execute request within timeout, the request itself is not sent, copies of it are
+     *
+     * @param timeoutMillis Time (ms) from now to the deadline
+     * @throws SocketTimeoutException if no response before deadline
+     */
+    public HttpResponse execute(HttpRequestBase request, long timeoutMillis) throws IOException {
+        long    deadline   = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        boolean idempotent = isIdempotent(request.getMethod());
+        Call    call       = new Call();
+        int     attempts   = 1;
+        boolean hedged     = false;
+        budget.deposit();
+        launch(call, request, deadline);
+        while (true) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                SocketTimeoutException timeout = new SocketTimeoutException("Deadline exceeded");
+                deadlines.increment();
+                call.discard(timeout);
+                throw timeout;
+            }
+            boolean canHedge = idempotent && !hedged && attempts < maxAttempts;
+            long    wait     = canHedge ? Math.min(remaining, getHedgeDelayMillis()) : remaining;
+            try {
+                HttpResponse response = call.result.get(wait, TimeUnit.MILLISECONDS);
+                call.abortOthers();
+                if (call.winner != call.attempts.get(0)) {
+                    hedgeWins.increment();
+                }
+                return response;
+            } catch (TimeoutException e) {
+                if (canHedge && wait < remaining) {
+                    hedged = true;
+                    if (budget.tryWithdraw()) {
+                        attempts++;
+                        hedges.increment();
+                        launch(call, request, deadline);
+                    }
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (idempotent && cause instanceof IOException && attempts < maxAttempts
+                    && deadline - System.nanoTime() > 0 && budget.tryWithdraw()) {
+                    attempts++;
+                    retries.increment();
+                    call.discard((IOException) cause);
+                    call = new Call();
+                    launch(call, request, deadline);
+                    continue;
+                }
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause);
+            } catch (InterruptedException e) {
+                call.discard(e);
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            }
+        }
+    }
+
+    private void launch(final Call call, HttpRequestBase request, final long deadline) {
+        final HttpUriRequest attempt = copyOf(request, deadline);
+        call.attempts.add(attempt);
+        call.running.incrementAndGet();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    HttpResponse response = client.execute(attempt);
+                    latencyMillis.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    synchronized (call) {
+                        if (call.winner == null) {
+                            call.winner = attempt;
+                        }
+                    }
+                    if (call.winner != attempt || !call.result.complete(response)) {
+                        release(response);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    if (call.running.decrementAndGet() == 0) {
+                        call.result.completeExceptionally(e);
+                    }
+                    return;
+                }
+                call.running.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Copy by RequestBuilder rather than clone(), clones share the cancellable of the original so aborting one
+     * attempt would abort the others
+     */
+    private HttpUriRequest copyOf(HttpRequestBase request, long deadline) {
+        RequestConfig config    = request.getConfig() == null ? defaultConfig : request.getConfig();
+        int           remaining = (int) Math.max(1L, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+        return RequestBuilder.copy(request)
+                             .setConfig(RequestConfig.copy(config)
+                                                     .setConnectTimeout(bound(config.getConnectTimeout(), remaining))
+                                                     .setSocketTimeout(bound(config.getSocketTimeout(), remaining))
+                                                     .setConnectionRequestTimeout(
+                                                             bound(config.getConnectionRequestTimeout(), remaining))
+                                                     .build())
+                             .build();
+    }
+
+    /**
+     * @param timeout Timeout of config, not positive for infinite or system default
+     */
+    private static int bound(int timeout, int remaining) {
+        return timeout > 0 ? Math.min(timeout, remaining) : remaining;
+    }
+
+    private static void release(HttpResponse response) {
+        try {
+            if (response instanceof Closeable) {
+                ((Closeable) response).close();
+            } else {
+                EntityUtils.consume(response.getEntity());
+            }
+        } catch (IOException e) {
+            // Connection of the losing attempt is discarded
+        }
+    }
+
+    private static boolean isIdempotent(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method);
+    }
+
+    /**
+     * Delay before hedging: p95 latency of attempts, or the initial delay before enough samples
+     */
+    public long getHedgeDelayMillis() {
+        if (latencyMillis.getCount() < MIN_SAMPLES) {
+            return initialHedgeDelayMillis;
+        }
+        return Math.max(1L, latencyMillis.getValueAtPercentile(95.0));
+    }
+
+    /**
+     * Histogram of attempt latency(ms)
+     */
+    public LatencyHistogram getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * Calls answered by the hedged attempt
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    public long getDeadlineExceededCount() {
+        return deadlines.sum();
+    }
+}
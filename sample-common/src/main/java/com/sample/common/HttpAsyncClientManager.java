@@ -0,0 +1,155 @@
+package com.sample.common;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+/**
+ * Non-blocking counterpart of HttpClientManager: connections are driven by a few I/O reactor threads instead of one
+ * thread per request, with the same TLS choices and default timeouts.
+ */
+public class HttpAsyncClientManager {
+    /**
+     * Default I/O reactor threads
+     */
+    private static final int IO_THREADS           = Runtime.getRuntime().availableProcessors();
+    /**
+     * Default requests waiting per route when in-flight limit reached, more are rejected
+     */
+    private static final int MAX_QUEUED_PER_ROUTE = 1024;
+
+
+    /**
+     * Create registry for public (any sites will be trusted)
+     */
+    public static Registry<SchemeIOSessionStrategy> createNonCheckRegistry() throws GeneralSecurityException {
+        return createRegistry(new SSLIOSessionStrategy(HttpClientManager.createNonCheckContext(),
+                                                       HttpClientManager.NON_CHECK_VERIFIER));
+    }
+
+    /**
+     * Create registry for sites included by trust store
+     *
+     * @param trustStoreType JKS(Default value),JCEKS(Recommended value),PKCS12,BKS,UBER
+     * @param trustStorePath
+     * @param password       password to enter trust store
+     */
+    public static Registry<SchemeIOSessionStrategy> createRegistry4Cer(String trustStoreType, String trustStorePath,
+            String password) throws GeneralSecurityException, IOException {
+        return createRegistry(new SSLIOSessionStrategy(
+                HttpClientManager.createContext4Cer(trustStoreType, trustStorePath, password)));
+    }
+
+    /**
+     * Create registry for sites trusted by system, or included by trust store
+     *
+     * @param trustStoreType JKS(Default value),JCEKS(Recommended value),PKCS12,BKS,UBER
+     * @param trustStorePath
+     * @param password       password to enter trust store
+     */
+    public static Registry<SchemeIOSessionStrategy> createRegistry4SysOrCer(String trustStoreType,
+            String trustStorePath, String password) throws GeneralSecurityException, IOException {
+        return createRegistry(new SSLIOSessionStrategy(
+                HttpClientManager.createContext4SysOrCer(trustStoreType, trustStorePath, password),
+                HttpClientManager.NON_CHECK_VERIFIER));
+    }
+
+    /**
+     * Create registry for internet public sites
+     */
+    public static Registry<SchemeIOSessionStrategy> createRegistry4Sys() {
+        return createRegistry(new SSLIOSessionStrategy(HttpClientManager.createSystemContext(),
+                                                       HttpClientManager.NON_CHECK_VERIFIER));
+    }
+
+    private static Registry<SchemeIOSessionStrategy> createRegistry(SSLIOSessionStrategy sslStrategy) {
+        return RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", sslStrategy)
+                .build();
+    }
+
+
+    /**
+     * @param registry       I/O session strategies by scheme
+     * @param ioThreads      I/O reactor threads, Eg: count of CPU cores
+     * @param maxTotal       Max total connections in the pool
+     * @param maxPerRoute    Max connections per route
+     * @param tcpNoDelay     If true, data will be sent immediately without using socket buffer
+     * @param soReuseAddress If true, when socket closed by current process, its port can be reused by other process
+     *                       even not released
+     * @param socketTimeout  Timeout for waiting data received
+     * @param soLinger       If true, when closing socket, all data will be sent or wait this timeout (seconds)
+     * @param soKeepAlive    If true, client will send idle packet to check server alive
+     * @return Connection pool
+     */
+    public static PoolingNHttpClientConnectionManager createPool(Registry<SchemeIOSessionStrategy> registry,
+            int ioThreads, int maxTotal, int maxPerRoute, boolean tcpNoDelay, boolean soReuseAddress,
+            int socketTimeout, int soLinger, boolean soKeepAlive) throws IOReactorException {
+        IOReactorConfig config = IOReactorConfig.custom()
+                                                .setIoThreadCount(ioThreads)
+                                                .setTcpNoDelay(tcpNoDelay)
+                                                .setSoReuseAddress(soReuseAddress)
+                                                .setSoTimeout(socketTimeout)
+                                                .setSoLinger(soLinger)
+                                                .setSoKeepAlive(soKeepAlive)
+                                                .build();
+        DefaultConnectingIOReactor reactor = new DefaultConnectingIOReactor(config);
+        PoolingNHttpClientConnectionManager manager = registry == null
+                ? new PoolingNHttpClientConnectionManager(reactor)
+                : new PoolingNHttpClientConnectionManager(reactor, registry);
+        manager.setMaxTotal(maxTotal);
+        manager.setDefaultMaxPerRoute(maxPerRoute);
+        return manager;
+    }
+
+    /**
+     * Create connection pool with default parameters of HttpClientManager
+     */
+    public static PoolingNHttpClientConnectionManager createDefaultPool(Registry<SchemeIOSessionStrategy> registry)
+            throws IOReactorException {
+        return createPool(registry, IO_THREADS, HttpClientManager.MAX_TOTAL, HttpClientManager.MAX_PER_ROUTE,
+                          HttpClientManager.TCP_NO_DELAY, HttpClientManager.SOCKET_REUSE_ADDRESS,
+                          HttpClientManager.SOCKET_TIMEOUT, HttpClientManager.SOCKET_LINGER,
+                          HttpClientManager.SOCKET_KEEP_ALIVE);
+    }
+
+
+    /**
+     * Create and start async http client
+     *
+     * @param maxInFlightPerRoute Requests sent concurrently per route, others wait in memory without thread, should
+     *                            not exceed max connections per route of the pool
+     * @param maxQueuedPerRoute   Requests waiting per route, more are completed by RejectedExecutionException
+     */
+    public static AsyncHttpClient createHttpClient(PoolingNHttpClientConnectionManager manager,
+            RequestConfig requestConfig, int maxInFlightPerRoute, int maxQueuedPerRoute) {
+        AsyncHttpClient client = new AsyncHttpClient(HttpAsyncClients.custom()
+                                                                     .setConnectionManager(manager)
+                                                                     .setDefaultRequestConfig(requestConfig)
+                                                                     .build(),
+                                                     maxInFlightPerRoute, maxQueuedPerRoute);
+        client.start();
+        return client;
+    }
+
+    /**
+     * Create and start async http client, in-flight requests per route limited by max connections per route of pool
+     */
+    public static AsyncHttpClient createHttpClient(PoolingNHttpClientConnectionManager manager,
+            RequestConfig requestConfig) {
+        return createHttpClient(manager, requestConfig, manager.getDefaultMaxPerRoute(), MAX_QUEUED_PER_ROUTE);
+    }
+
+}
@@ -11,78 +11,116 @@ import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.ssl.SSLContextBuilder;
 import org.apache.http.ssl.SSLContexts;
+import org.apache.http.ssl.SSLInitializationException;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 
 public class HttpClientManager {
     /**
      * Max connections in the pool
      */
-    private static final int     MAX_TOTAL            = 128;
+    static final int     MAX_TOTAL            = 128;
     /**
      * Max connections per route (IP:Port)
      */
-    private static final int     MAX_PER_ROUTE        = 8;
+    static final int     MAX_PER_ROUTE        = 8;
     /**
      * Parameter for disable/enable Nagle algorithm: For data n has 500 bytes, data n+1 has 1 bytes, if tcpNoDelay=true,
      * data will be sent in 2 packets. Otherwise data may be merged after buffering. For interaction web application,
      * we suggest tcpNoDelay=true. In some scenario when sending large data traffic of 1 message, we suggest
      * tcpNoDelay=false and use sendFile() primitive which has zero copy.
      */
-    private static final boolean TCP_NO_DELAY         = true;
+    static final boolean TCP_NO_DELAY         = true;
     /**
      * Parameter for enable/disable port be reused by other process immediately after this process be killed.
      */
-    private static final boolean SOCKET_REUSE_ADDRESS = true;
+    static final boolean SOCKET_REUSE_ADDRESS = true;
     /**
      * Timeout(s) for close TCP, it timeout not closed, RST message will be used to close connection.
      */
-    private static final int     SOCKET_LINGER        = 60;
+    static final int     SOCKET_LINGER        = 60;
     /**
      * Parameter for enable/disable TCP heart-beat packets sending to keep the connection.
      */
-    private static final boolean SOCKET_KEEP_ALIVE    = true;
+    static final boolean SOCKET_KEEP_ALIVE    = true;
 
     /**
      * Default timeout for getting connection from pool (ms)
      */
-    private static final int CONNECTION_REQUEST_TIMEOUT = 500;
+    static final int CONNECTION_REQUEST_TIMEOUT = 500;
     /**
      * Default timeout for connect to route (ms)
      */
-    private static final int CONNECTION_TIMEOUT         = 20000;
+    static final int CONNECTION_TIMEOUT         = 20000;
     /**
      * Default timeout for waiting response (ms),
      * such as configure 2000ms when average 1000ms delay from request sent to response received
      */
-    private static final int SOCKET_TIMEOUT             = 20000;
+    static final int SOCKET_TIMEOUT             = 20000;
+
+    /**
+     * Default max lifetime of pooled connection (ms), so that connections are re-created after DNS or load balancer
+     * changes, -1 for no limit
+     */
+    static final long TIME_TO_LIVE              = 300000;
+    /**
+     * Default inactivity (ms) after which pooled connection is checked for staleness before being leased, so that
+     * connections closed by server or load balancer are not used; negative value disables the check
+     */
+    static final int  VALIDATE_AFTER_INACTIVITY = 2000;
+
+    /**
+     * Default max TLS sessions cached per SSL context for resumption
+     */
+    static final int SSL_SESSION_CACHE_SIZE = 1024;
+    /**
+     * Default lifetime (s) of cached TLS sessions
+     */
+    static final int SSL_SESSION_TIMEOUT    = 3600;
+
+    /**
+     * SSL contexts built from trust stores, keyed by kind, store type, path and password
+     */
+    private static final ConcurrentMap<List<String>, CachedContext> CONTEXTS = new ConcurrentHashMap<>();
+
+    private static volatile SSLContext nonCheckContext;
+    private static volatile SSLContext systemContext;
+
+
+    /**
+     * Accepts any host name, used when certificate is trusted but issued for other names
+     */
+    static final HostnameVerifier NON_CHECK_VERIFIER = new HostnameVerifier() {
+        @Override
+        public boolean verify(String s, SSLSession sslSession) {
+            return true;
+        }
+    };
 
 
     /**
      * Create registry for public (any sites will be trusted)
      */
     public static Registry<ConnectionSocketFactory> createNonCheckRegistry() throws GeneralSecurityException {
-        SSLContext sslContext = SSLContexts.custom().loadTrustMaterial(null, new TrustSelfSignedStrategy()).build();
-        SSLConnectionSocketFactory sslFactory = new SSLConnectionSocketFactory(sslContext, new HostnameVerifier() {
-            @Override
-            public boolean verify(String s, SSLSession sslSession) {
-                return true;
-            }
-        });
-        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
-                .register("http", PlainConnectionSocketFactory.getSocketFactory())
-                .register("https", sslFactory)
-                .build();
-        return registry;
+        return createRegistry(new SSLConnectionSocketFactory(createNonCheckContext(), NON_CHECK_VERIFIER));
     }
 
     /**
@@ -94,19 +132,8 @@ public class HttpClientManager {
      */
     public static Registry<ConnectionSocketFactory> createRegistry4Cer(String trustStoreType, String trustStorePath,
             String password) throws GeneralSecurityException, IOException {
-        try (InputStream stream = new FileInputStream(trustStorePath)) {
-            KeyStore trustStore = KeyStore.getInstance(trustStoreType);
-            trustStore.load(stream, password.toCharArray());
-            SSLContext sslContext = SSLContexts.custom()
-                                               .loadTrustMaterial(trustStore, new TrustSelfSignedStrategy())
-                                               .build();
-            SSLConnectionSocketFactory sslFactory = new SSLConnectionSocketFactory(sslContext);
-            Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
-                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
-                    .register("https", sslFactory)
-                    .build();
-            return registry;
-        }
+        return createRegistry(new SSLConnectionSocketFactory(
+                createContext4Cer(trustStoreType, trustStorePath, password)));
     }
 
     /**
@@ -118,25 +145,8 @@ public class HttpClientManager {
      */
     public static Registry<ConnectionSocketFactory> createRegistry4SysOrCer(String trustStoreType, String trustStorePath,
             String password) throws GeneralSecurityException, IOException {
-        try (InputStream stream = new FileInputStream(trustStorePath)) {
-            KeyStore trustStore = KeyStore.getInstance(trustStoreType);
-            trustStore.load(stream, password.toCharArray());
-            SSLContext sslContext = SSLContexts.custom()
-                                               .loadTrustMaterial(null, new TrustSelfSignedStrategy())
-                                               .loadKeyMaterial(trustStore, password.toCharArray())
-                                               .build();
-            SSLConnectionSocketFactory sslFactory = new SSLConnectionSocketFactory(sslContext, new HostnameVerifier() {
-                @Override
-                public boolean verify(String s, SSLSession sslSession) {
-                    return true;
-                }
-            });
-            Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
-                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
-                    .register("https", sslFactory)
-                    .build();
-            return registry;
-        }
+        return createRegistry(new SSLConnectionSocketFactory(
+                createContext4SysOrCer(trustStoreType, trustStorePath, password), NON_CHECK_VERIFIER));
     }
 
     /**
@@ -145,18 +155,163 @@ public class HttpClientManager {
      * @return registry will be used to create pool
      */
     public static Registry<ConnectionSocketFactory> createRegistry4Sys() {
-        SSLContext sslContext = SSLContexts.createSystemDefault();
-        SSLConnectionSocketFactory sslFactory = new SSLConnectionSocketFactory(sslContext, new HostnameVerifier() {
-            @Override
-            public boolean verify(String s, SSLSession sslSession) {
-                return true;
-            }
-        });
-        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+        return createRegistry(new SSLConnectionSocketFactory(createSystemContext(), NON_CHECK_VERIFIER));
+    }
+
+    private static Registry<ConnectionSocketFactory> createRegistry(SSLConnectionSocketFactory sslFactory) {
+        return RegistryBuilder.<ConnectionSocketFactory>create()
                 .register("http", PlainConnectionSocketFactory.getSocketFactory())
                 .register("https", sslFactory)
                 .build();
-        return registry;
+    }
+
+    /**
+     * Configure client session cache of SSL context, so that connections to the same host:port resume TLS sessions
+     * (abbreviated handshake) instead of doing full handshakes
+     *
+     * @param cacheSize      Max sessions cached, 0 for no limit
+     * @param timeoutSeconds Lifetime of cached sessions (s), 0 for no limit
+     */
+    public static SSLContext configureSessionCache(SSLContext sslContext, int cacheSize, int timeoutSeconds) {
+        SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(cacheSize);
+            sessionContext.setSessionTimeout(timeoutSeconds);
+        }
+        return sslContext;
+    }
+
+    /**
+     * Drop cached SSL contexts built from trust stores and system properties, following registries will reload them
+     */
+    public static void clearContextCache() {
+        CONTEXTS.clear();
+        systemContext = null;
+    }
+
+    /**
+     * SSL context trusting self signed certificates, shared by blocking and async registries
+     */
+    static SSLContext createNonCheckContext() throws GeneralSecurityException {
+        SSLContext context = nonCheckContext;
+        if (context == null) {
+            context = configureSessionCache(
+                    SSLContexts.custom().loadTrustMaterial(null, new TrustSelfSignedStrategy()).build(),
+                    SSL_SESSION_CACHE_SIZE, SSL_SESSION_TIMEOUT);
+            nonCheckContext = context;
+        }
+        return context;
+    }
+
+    /**
+     * SSL context trusting system certificates, with client key material from javax.net.ssl.keyStore as the JVM
+     * default context, and session cache configured; a dedicated instance, so that the JVM-wide
+     * SSLContext.getDefault() keeps its own settings
+     */
+    static SSLContext createSystemContext() {
+        SSLContext context = systemContext;
+        if (context == null) {
+            try {
+                context = configureSessionCache(buildSystemContext(), SSL_SESSION_CACHE_SIZE, SSL_SESSION_TIMEOUT);
+            } catch (GeneralSecurityException | IOException e) {
+                throw new SSLInitializationException(e.getMessage(), e);
+            }
+            systemContext = context;
+        }
+        return context;
+    }
+
+    /**
+     * Trust managers of system (javax.net.ssl.trustStore or cacerts), key managers from the store file given by
+     * javax.net.ssl.keyStore, keyStoreType and keyStorePassword (the password of store and keys), if any
+     */
+    static SSLContext buildSystemContext() throws GeneralSecurityException, IOException {
+        SSLContextBuilder builder = SSLContexts.custom();
+        String            path    = System.getProperty("javax.net.ssl.keyStore", "");
+        if (!path.isEmpty() && !"NONE".equals(path)) {
+            String password = System.getProperty("javax.net.ssl.keyStorePassword", "");
+            builder.loadKeyMaterial(loadKeyStore(System.getProperty("javax.net.ssl.keyStoreType",
+                                                                    KeyStore.getDefaultType()), path, password),
+                                    password.toCharArray());
+        }
+        return builder.build();
+    }
+
+    /**
+     * SSL context trusting certificates in trust store, cached until the store file changes
+     */
+    static SSLContext createContext4Cer(String trustStoreType, String trustStorePath, String password)
+            throws GeneralSecurityException, IOException {
+        return cachedContext(false, trustStoreType, trustStorePath, password);
+    }
+
+    /**
+     * SSL context trusting system or self signed certificates, with key material from trust store, cached until
+     * the store file changes
+     */
+    static SSLContext createContext4SysOrCer(String trustStoreType, String trustStorePath, String password)
+            throws GeneralSecurityException, IOException {
+        return cachedContext(true, trustStoreType, trustStorePath, password);
+    }
+
+    /**
+     * Reuse SSL context built from the same store while its modified time and length are unchanged, so that store
+     * is not read for each registry and clients share the TLS session cache
+     */
+    private static SSLContext cachedContext(boolean keyMaterial, String type, String path, String password)
+            throws GeneralSecurityException, IOException {
+        File          file         = new File(path);
+        List<String>  key          = Arrays.asList(keyMaterial ? "key" : "trust", type, file.getCanonicalPath(),
+                                                   password);
+        long          lastModified = file.lastModified();
+        long          length       = file.length();
+        CachedContext cached       = CONTEXTS.get(key);
+        if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+            return cached.context;
+        }
+        SSLContext context = keyMaterial ? buildContext4SysOrCer(type, path, password)
+                : buildContext4Cer(type, path, password);
+        configureSessionCache(context, SSL_SESSION_CACHE_SIZE, SSL_SESSION_TIMEOUT);
+        CONTEXTS.put(key, new CachedContext(lastModified, length, context));
+        return context;
+    }
+
+    static SSLContext buildContext4Cer(String trustStoreType, String trustStorePath, String password)
+            throws GeneralSecurityException, IOException {
+        return SSLContexts.custom()
+                          .loadTrustMaterial(loadKeyStore(trustStoreType, trustStorePath, password),
+                                             new TrustSelfSignedStrategy())
+                          .build();
+    }
+
+    static SSLContext buildContext4SysOrCer(String trustStoreType, String trustStorePath, String password)
+            throws GeneralSecurityException, IOException {
+        return SSLContexts.custom()
+                          .loadTrustMaterial(null, new TrustSelfSignedStrategy())
+                          .loadKeyMaterial(loadKeyStore(trustStoreType, trustStorePath, password),
+                                           password.toCharArray())
+                          .build();
+    }
+
+    private static final class CachedContext {
+        final long       lastModified;
+        final long       length;
+        final SSLContext context;
+
+        CachedContext(long lastModified, long length, SSLContext context) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.context = context;
+        }
+    }
+
+    private static KeyStore loadKeyStore(String type, String path, String password)
+            throws GeneralSecurityException, IOException {
+        try (InputStream stream = new FileInputStream(path)) {
+            KeyStore keyStore = KeyStore.getInstance(type);
+            keyStore.load(stream, password.toCharArray());
+            return keyStore;
+        }
     }
 
 
@@ -175,11 +330,36 @@ public class HttpClientManager {
     public static PoolingHttpClientConnectionManager createPool(Registry<ConnectionSocketFactory> registry,
             int maxTotal, int maxPerRoute, boolean tcpNoDelay, boolean soReuseAddress, int socketTimeout,
             int soLinger, boolean soKeepAlive) {
-        PoolingHttpClientConnectionManager manager = registry == null ? new PoolingHttpClientConnectionManager()
-                : new PoolingHttpClientConnectionManager(registry);
+        return createPool(registry, maxTotal, maxPerRoute, tcpNoDelay, soReuseAddress, socketTimeout, soLinger,
+                          soKeepAlive, -1, VALIDATE_AFTER_INACTIVITY);
+    }
+
+    /**
+     * @param registry                Connection socket factory
+     * @param maxTotal                Max total connections in the pool
+     * @param maxPerRoute             Max connections per route
+     * @param tcpNoDelay              If true, data will be sent immediately without using socket buffer
+     * @param soReuseAddress          If true, when socket closed by current process, its port can be reused by other
+     *                                process even not released
+     * @param socketTimeout           Timeout for waiting data received
+     * @param soLinger                If true, when closing socket, all data will be sent or wait this timeout (seconds)
+     * @param soKeepAlive             If true, client will send idle packet to check server alive
+     * @param timeToLive              Max lifetime of connection (ms), -1 for no limit; expired connections are closed
+     *                                when released or by ConnectionEvictor
+     * @param validateAfterInactivity Inactivity (ms) after which connection is checked before being leased
+     * @return Connection pool
+     */
+    public static PoolingHttpClientConnectionManager createPool(Registry<ConnectionSocketFactory> registry,
+            int maxTotal, int maxPerRoute, boolean tcpNoDelay, boolean soReuseAddress, int socketTimeout,
+            int soLinger, boolean soKeepAlive, long timeToLive, int validateAfterInactivity) {
+        PoolingHttpClientConnectionManager manager = registry == null
+                ? new PoolingHttpClientConnectionManager(timeToLive, TimeUnit.MILLISECONDS)
+                : new PoolingHttpClientConnectionManager(registry, null, null, null, timeToLive, TimeUnit.MILLISECONDS);
+        manager.setValidateAfterInactivity(validateAfterInactivity);
         manager.setMaxTotal(maxTotal);
         manager.setDefaultMaxPerRoute(maxPerRoute);
         // For some route using specified amount to override default, use: manager.setMaxPerRoute(route,max);
+        // or adapt it to latency of the route by RoutePoolController
         SocketConfig config = SocketConfig.custom()
                                           .setTcpNoDelay(tcpNoDelay)
                                           .setSoReuseAddress(soReuseAddress)
@@ -197,7 +377,8 @@ public class HttpClientManager {
      */
     public static PoolingHttpClientConnectionManager createDefaultPool(Registry<ConnectionSocketFactory> registry) {
         return createPool(registry, MAX_TOTAL, MAX_PER_ROUTE,
-                          TCP_NO_DELAY, SOCKET_REUSE_ADDRESS, SOCKET_TIMEOUT, SOCKET_LINGER, SOCKET_KEEP_ALIVE);
+                          TCP_NO_DELAY, SOCKET_REUSE_ADDRESS, SOCKET_TIMEOUT, SOCKET_LINGER, SOCKET_KEEP_ALIVE,
+                          TIME_TO_LIVE, VALIDATE_AFTER_INACTIVITY);
     }
 
 
@@ -221,4 +402,29 @@ public class HttpClientManager {
                           .build();
     }
 
+    /**
+     * Create http client with response cache
+     *
+     * @param cacheFolder     Folder of disk tier of cache
+     * @param maxEntries      Max cached responses, Eg: 1000
+     * @param memoryThreshold Max body size (bytes) cached in heap, larger bodies are cached in files, Eg: 64K
+     * @param maxObjectSize   Max body size (bytes) cached, Eg: 8M
+     */
+    public static CachingHttpClient createCachingHttpClient(PoolingHttpClientConnectionManager manager,
+            RequestConfig requestConfig, Path cacheFolder, int maxEntries, int memoryThreshold, long maxObjectSize)
+            throws IOException {
+        return new CachingHttpClient(manager, requestConfig, cacheFolder, maxEntries, memoryThreshold, maxObjectSize);
+    }
+
+    /**
+     * Create http client on the pool of controller, whose per-route limits adapt to latency and errors
+     */
+    public static HttpClient createHttpClient(RoutePoolController controller, RequestConfig requestConfig) {
+        return HttpClients.custom()
+                          .setConnectionManager(controller.getConnectionManager())
+                          .setRequestExecutor(controller.getRequestExecutor())
+                          .setDefaultRequestConfig(requestConfig)
+                          .build();
+    }
+
 }
@@ -0,0 +1,241 @@
+package com.sample.common;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams response entities of http client created by HttpClientManager into files through a direct buffer of
+ * BufferPool, so memory stays flat whatever the payload size. Interrupted downloads can be resumed by HTTP Range
+ * from the current file size: the validator (strong ETag or Last-Modified) of the response is kept in a file next to
+ * the download (name + VALIDATOR_SUFFIX) and sent as If-Range, so a changed resource is downloaded again whole; any
+ * answer not matching the local size also restarts from the start.
+ */
+public class HttpDownloader {
+    /**
+     * Size of direct buffer per download
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Suffix of file keeping validator of the download
+     */
+    public static final String VALIDATOR_SUFFIX = ".validator";
+
+    /**
+     * Outcome of a download
+     */
+    public static class Result {
+        /**
+         * File size before download, positive if resumed
+         */
+        public final long    offset;
+        /**
+         * Bytes written by this download
+         */
+        public final long    bytes;
+        public final long    elapsedNanos;
+        /**
+         * True if file was already complete(server answered 416 to the range)
+         */
+        public final boolean complete;
+
+        Result(long offset, long bytes, long elapsedNanos, boolean complete) {
+            this.offset = offset;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+            this.complete = complete;
+        }
+
+        public double getBytesPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : bytes * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d bytes from offset %d in %d ms, %.1f MB/s", bytes, offset,
+                                 TimeUnit.NANOSECONDS.toMillis(elapsedNanos), getBytesPerSecond() / (1 << 20));
+        }
+    }
+
+    private final HttpClient client;
+
+    public HttpDownloader(HttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Download to file, truncating it if exists
+     */
+    public Result download(String url, Path to) throws IOException {
+        return download(new HttpGet(url), to, false);
+    }
+
+    /**
+     * Continue download from the current size of file by Range request; file is downloaded again from the start if
+     * no validator was kept, the resource changed, or the server ignores or mismatches the range
+     */
+    public Result resume(String url, Path to) throws IOException {
+        return download(new HttpGet(url), to, true);
+    }
+
+    /**
+     * @param request Request with own headers or config, Range and If-Range headers are set if resuming
+     */
+    public Result download(HttpGet request, Path to, boolean resume) throws IOException {
+        Path   validatorFile = validatorFile(to);
+        long   offset        = resume && Files.exists(to) ? Files.size(to) : 0L;
+        String validator     = offset > 0 && Files.exists(validatorFile)
+                               ? new String(Files.readAllBytes(validatorFile), StandardCharsets.UTF_8) : null;
+        if (validator == null) {
+            offset = 0L;
+        } else {
+            request.setHeader("Range", "bytes=" + offset + "-");
+            request.setHeader("If-Range", validator);
+        }
+        long         start    = System.nanoTime();
+        HttpResponse response = client.execute(request);
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            if (offset > 0 && status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
+                long[] range = parseContentRange(response.getFirstHeader("Content-Range"));
+                if (range != null && range[2] == offset) {
+                    return new Result(offset, 0L, System.nanoTime() - start, true);
+                }
+                return restart(request, response, to);
+            }
+            if (status != HttpStatus.SC_OK && status != HttpStatus.SC_PARTIAL_CONTENT) {
+                throw new HttpResponseException(status, response.getStatusLine().getReasonPhrase());
+            }
+            if (status == HttpStatus.SC_PARTIAL_CONTENT) {
+                long[] range = parseContentRange(response.getFirstHeader("Content-Range"));
+                if (range == null || range[0] != offset) {
+                    if (offset == 0) {
+                        throw new HttpResponseException(status, "Partial content not starting at 0");
+                    }
+                    return restart(request, response, to);
+                }
+            }
+            boolean append = offset > 0 && status == HttpStatus.SC_PARTIAL_CONTENT;
+            saveValidator(response, validatorFile);
+            try (FileChannel channel = FileChannel.open(to, append ? IoUtil.APPEND_OPTIONS
+                    : IoUtil.OVERWRITE_OPTIONS)) {
+                long bytes = transfer(response.getEntity(), channel);
+                return new Result(append ? offset : 0L, bytes, System.nanoTime() - start, false);
+            }
+        } finally {
+            close(response);
+        }
+    }
+
+    /**
+     * File keeping validator of a download
+     */
+    public static Path validatorFile(Path to) {
+        return to.resolveSibling(to.getFileName() + VALIDATOR_SUFFIX);
+    }
+
+    /**
+     * Download again from the start after an answer not matching the local file
+     */
+    private Result restart(HttpGet request, HttpResponse response, Path to) throws IOException {
+        close(response);
+        request.removeHeaders("Range");
+        request.removeHeaders("If-Range");
+        Files.deleteIfExists(validatorFile(to));
+        return download(request, to, false);
+    }
+
+    /**
+     * Keep strong ETag, or Last-Modified, of response for If-Range of a later resume
+     */
+    private static void saveValidator(HttpResponse response, Path validatorFile) throws IOException {
+        Header validator = response.getFirstHeader("ETag");
+        if (validator == null || validator.getValue().startsWith("W/")) {
+            validator = response.getFirstHeader("Last-Modified");
+        }
+        if (validator == null) {
+            Files.deleteIfExists(validatorFile);
+        } else {
+            Files.write(validatorFile, validator.getValue().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Parse "bytes first-last/length" or "bytes &#42;/length", unknown parts are -1
+     *
+     * @return {first, last, length}, null if header missing or malformed
+     */
+    static long[] parseContentRange(Header header) {
+        String value = header == null ? null : header.getValue().trim();
+        if (value == null || !value.startsWith("bytes ")) {
+            return null;
+        }
+        int slash = value.indexOf('/');
+        if (slash < 0) {
+            return null;
+        }
+        try {
+            String range  = value.substring(6, slash).trim();
+            String length = value.substring(slash + 1).trim();
+            long[] result = {-1L, -1L, "*".equals(length) ? -1L : Long.parseLong(length)};
+            if (!"*".equals(range)) {
+                int dash = range.indexOf('-');
+                if (dash < 0) {
+                    return null;
+                }
+                result[0] = Long.parseLong(range.substring(0, dash));
+                result[1] = Long.parseLong(range.substring(dash + 1));
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long transfer(HttpEntity entity, FileChannel channel) throws IOException {
+        if (entity == null) {
+            return 0L;
+        }
+        ByteBuffer buffer = BufferPool.DEFAULT.acquire(BUFFER_SIZE);
+        long       bytes  = 0L;
+        try (InputStream stream = entity.getContent()) {
+            ReadableByteChannel source = Channels.newChannel(stream);
+            while (source.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    bytes += channel.write(buffer);
+                }
+                buffer.clear();
+            }
+        } finally {
+            BufferPool.DEFAULT.release(buffer);
+        }
+        return bytes;
+    }
+
+    private static void close(HttpResponse response) throws IOException {
+        if (response instanceof Closeable) {
+            ((Closeable) response).close();
+        } else {
+            EntityUtils.consume(response.getEntity());
+        }
+    }
+}
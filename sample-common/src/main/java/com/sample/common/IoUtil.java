@@ -1,19 +1,22 @@
 package com.sample.common;
 
-import sun.nio.ch.DirectBuffer;
-
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
 import java.nio.file.*;
 import java.nio.file.attribute.*;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 public class IoUtil {
@@ -32,6 +35,22 @@ public class IoUtil {
             StandardOpenOption.APPEND
     );
 
+    /**
+     * Policy to force copied file to storage
+     */
+    public enum SyncPolicy {
+        NONE,
+        DATA,
+        DATA_AND_METADATA
+    }
+
+    // Buffers of text writers filled before one gathering write
+    private static final int GATHER_BUFFERS     = 4;
+    // Transfers in a row moving nothing before copying the rest by reads and writes
+    private static final int MAX_ZERO_TRANSFERS = 16;
+    // Pooled buffer of copies by reads and writes
+    private static final int COPY_BUFFER_SIZE   = 64 * 1024;
+
     // ACL Permissions
     public static final  Set<AclEntryPermission> ACL_READ_MAX  = EnumSet.of(
             AclEntryPermission.READ_DATA,
@@ -76,6 +95,25 @@ public class IoUtil {
             AclEntryPermission.WRITE_ACL,
             AclEntryPermission.WRITE_OWNER
     );
+    /**
+     * Owner only directory: list, add and delete entries, traverse
+     */
+    private static final Set<AclEntryPermission> ACL_DIR_MIN   = EnumSet.of(
+            AclEntryPermission.READ_DATA,      // List directory
+            AclEntryPermission.READ_NAMED_ATTRS,
+            AclEntryPermission.READ_ATTRIBUTES,
+            AclEntryPermission.READ_ACL,
+            AclEntryPermission.SYNCHRONIZE,
+            AclEntryPermission.WRITE_DATA,     // Add file
+            AclEntryPermission.APPEND_DATA,    // Add subdirectory
+            AclEntryPermission.WRITE_NAMED_ATTRS,
+            AclEntryPermission.WRITE_ATTRIBUTES,
+            AclEntryPermission.EXECUTE,        // Traverse
+            AclEntryPermission.DELETE_CHILD,
+            AclEntryPermission.DELETE,
+            AclEntryPermission.WRITE_ACL,
+            AclEntryPermission.WRITE_OWNER
+    );
 
 
     /**
@@ -84,6 +122,7 @@ public class IoUtil {
     private static class PosixAccess {
         static final FileAttribute<Set<PosixFilePermission>> READ_ATTRS  = createPermission("r--------");
         static final FileAttribute<Set<PosixFilePermission>> WRITE_ATTRS = createPermission("rw-------");
+        static final FileAttribute<Set<PosixFilePermission>> DIR_ATTRS   = createPermission("rwx------");
 
         public static FileAttribute<Set<PosixFilePermission>> createPermission(String permissions) {
             return PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(permissions));
@@ -99,6 +138,7 @@ public class IoUtil {
         static final String                        USER        = System.getProperty("user.name");
         static final FileAttribute<List<AclEntry>> READ_ATTRS  = createPermission(ACL_READ_MIN, USER);
         static final FileAttribute<List<AclEntry>> WRITE_ATTRS = createPermission(ACL_WRITE_MIN, USER);
+        static final FileAttribute<List<AclEntry>> DIR_ATTRS   = createPermission(ACL_DIR_MIN, USER);
 
         public static FileAttribute<List<AclEntry>> createPermission(Set<AclEntryPermission> permissions, String user) {
             FileAttribute<List<AclEntry>> result = new FileAttribute<List<AclEntry>>() {
@@ -136,6 +176,7 @@ public class IoUtil {
     // Permissions for read/write
     private static final FileAttribute<?> READ_ATTRS  = IS_POSIX ? PosixAccess.READ_ATTRS : AclAccess.READ_ATTRS;
     private static final FileAttribute<?> WRITE_ATTRS = IS_POSIX ? PosixAccess.WRITE_ATTRS : AclAccess.WRITE_ATTRS;
+    private static final FileAttribute<?> DIR_ATTRS   = IS_POSIX ? PosixAccess.DIR_ATTRS : AclAccess.DIR_ATTRS;
 
     /**
      * Copy data and file attributes to target file: If target file exist, replace it with data and attributes
@@ -156,19 +197,226 @@ public class IoUtil {
         try (FileChannel fromChannel = FileChannel.open(from, READ_OPTIONS);
              FileChannel toChannel = FileChannel.open(to, OVERWRITE_OPTIONS)
         ) {
-            fromChannel.transferTo(0L, fromChannel.size(), toChannel);
+            transfer(fromChannel, 0L, fromChannel.size(), toChannel);
         }
     }
     public static void secureCopy(Path from, Path to) throws IOException {
         try (FileChannel fromChannel = FileChannel.open(from, READ_OPTIONS, READ_ATTRS);
              FileChannel toChannel = FileChannel.open(to, OVERWRITE_OPTIONS, WRITE_ATTRS)
         ) {
-            fromChannel.transferTo(0L, fromChannel.size(), toChannel);
+            transfer(fromChannel, 0L, fromChannel.size(), toChannel);
+        }
+    }
+
+    /**
+     * Create directory and missing parents with owner only permissions, as files written by the secure methods;
+     * existing directories are kept as they are
+     */
+    public static void secureCreateDirectories(Path dir) throws IOException {
+        Files.createDirectories(dir, DIR_ATTRS);
+    }
+
+    /**
+     * Transfer count bytes from position of source to current position of target; a single transferTo moves at most
+     * about 2GB on linux, and less if source shrinks. If transferTo keeps moving nothing, the rest is copied by reads
+     * and writes instead of spinning
+     */
+    static void transfer(FileChannel from, long position, long count, FileChannel to) throws IOException {
+        long end   = position + count;
+        int  zeros = 0;
+        while (position < end) {
+            long transferred = from.transferTo(position, end - position, to);
+            if (transferred <= 0) {
+                if (position >= from.size()) {
+                    throw new EOFException("Source truncated at " + position + " of " + end + " bytes");
+                }
+                if (++zeros >= MAX_ZERO_TRANSFERS) {
+                    copy(from, position, end, to);
+                    return;
+                }
+                continue;
+            }
+            zeros = 0;
+            position += transferred;
+        }
+    }
+
+    /**
+     * Copy bytes from position to end of source to current position of target by a pooled direct buffer
+     */
+    private static void copy(FileChannel from, long position, long end, FileChannel to) throws IOException {
+        ByteBuffer buffer = BufferPool.DEFAULT.acquire(COPY_BUFFER_SIZE);
+        try {
+            while (position < end) {
+                buffer.clear();
+                if (buffer.capacity() > end - position) {
+                    buffer.limit((int) (end - position));
+                }
+                int read = from.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("Source truncated at " + position + " of " + end + " bytes");
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    to.write(buffer);
+                }
+                position += read;
+            }
+        } finally {
+            BufferPool.DEFAULT.release(buffer);
+        }
+    }
+
+    /**
+     * Copy large file by segments transferred in parallel into the pre-sized target, each segment by own channels;
+     * files not larger than a segment are copied by one transfer
+     *
+     * @param executor    Executor running segment copies
+     * @param segmentSize Bytes per segment
+     * @param sync        Whether to force target to storage when done
+     */
+    public static void parallelCopy(Path from, Path to, ExecutorService executor, long segmentSize, SyncPolicy sync)
+            throws IOException {
+        parallelCopyFile(from, to, executor, segmentSize, sync, false);
+    }
+    public static void secureParallelCopy(Path from, Path to, ExecutorService executor, long segmentSize,
+            SyncPolicy sync) throws IOException {
+        parallelCopyFile(from, to, executor, segmentSize, sync, true);
+    }
+    private static void parallelCopyFile(Path from, Path to, ExecutorService executor, long segmentSize,
+            SyncPolicy sync, boolean secure) throws IOException {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Invalid segment size");
+        }
+        try (FileChannel fromChannel = secure ? FileChannel.open(from, READ_OPTIONS, READ_ATTRS)
+                : FileChannel.open(from, READ_OPTIONS);
+             FileChannel toChannel = secure ? FileChannel.open(to, OVERWRITE_OPTIONS, WRITE_ATTRS)
+                     : FileChannel.open(to, OVERWRITE_OPTIONS)
+        ) {
+            long size = fromChannel.size();
+            if (size <= segmentSize) {
+                transfer(fromChannel, 0L, size, toChannel);
+            } else {
+                // Pre-size target so segments are written into place
+                toChannel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+                List<Segment> segments = new ArrayList<>();
+                try {
+                    for (long position = 0L; position < size; position += segmentSize) {
+                        Segment segment = new Segment(from, to, position, Math.min(segmentSize, size - position));
+                        segment.future = executor.submit(segment);
+                        segments.add(segment);
+                    }
+                } catch (RuntimeException e) {
+                    awaitStarted(segments);
+                    throw e;
+                }
+                await(segments);
+            }
+            if (sync != SyncPolicy.NONE) {
+                toChannel.force(sync == SyncPolicy.DATA_AND_METADATA);
+            }
         }
     }
 
     /**
-     * Read text from file by direct buffer
+     * Segment of parallel copy by own channels. Whichever claims it first, the segment starting or a caller
+     * cancelling it, decides whether it runs, so that a cancelled segment never writes
+     */
+    private static final class Segment implements Callable<Void> {
+        private final Path          from;
+        private final Path          to;
+        private final long          start;
+        private final long          count;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private       Future<?>     future;
+
+        Segment(Path from, Path to, long start, long count) {
+            this.from = from;
+            this.to = to;
+            this.start = start;
+            this.count = count;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            if (!claimed.compareAndSet(false, true)) {
+                return null;
+            }
+            try (FileChannel source = FileChannel.open(from, READ_OPTIONS);
+                 FileChannel target = FileChannel.open(to, StandardOpenOption.WRITE)
+            ) {
+                target.position(start);
+                transfer(source, start, count, target);
+            }
+            return null;
+        }
+
+        /**
+         * @return False if the segment already started
+         */
+        boolean cancel() {
+            if (claimed.compareAndSet(false, true)) {
+                future.cancel(false);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Wait for all segments. After a failure or interrupt, segments not started are cancelled and started ones are
+     * still waited for, so that no segment writes into target once the caller sees the failure
+     */
+    private static void await(List<Segment> segments) throws IOException {
+        int done = 0;
+        try {
+            for (Segment segment : segments) {
+                segment.future.get();
+                done++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for segments");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } finally {
+            if (done < segments.size()) {
+                awaitStarted(segments.subList(done, segments.size()));
+            }
+        }
+    }
+
+    /**
+     * Cancel segments not started and wait for the others, ignoring their outcome; interrupts are kept for caller
+     */
+    private static void awaitStarted(List<Segment> segments) {
+        List<Segment> started = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (!segment.cancel()) {
+                started.add(segment);
+            }
+        }
+        boolean interrupted = Thread.interrupted();
+        for (Segment segment : started) {
+            while (true) {
+                try {
+                    segment.future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Read text from file by chunks of pooled direct buffer
      */
     public static String readText(Path from, String encode) throws IOException {
         return readTextFile(from, encode, false);
@@ -177,36 +425,89 @@ public class IoUtil {
         return readTextFile(from, encode, true);
     }
     private static String readTextFile(Path from, String encode, boolean secure) throws IOException {
-        try (FileChannel channel = secure ? FileChannel.open(from, READ_OPTIONS, READ_ATTRS)
+        try (TextReader reader = secure ? secureOpenText(from, encode) : openText(from, encode)) {
+            StringBuilder result = new StringBuilder();
+            CharSequence  chunk;
+            while ((chunk = reader.nextChunk()) != null) {
+                result.append(chunk);
+            }
+            return result.toString();
+        }
+    }
+
+    /**
+     * Open text file for reading by chunks or lines with bounded memory, bytes are read into a pooled direct buffer
+     */
+    public static TextReader openText(Path from, String encode) throws IOException {
+        return openTextFile(from, encode, false, false);
+    }
+    public static TextReader secureOpenText(Path from, String encode) throws IOException {
+        return openTextFile(from, encode, true, false);
+    }
+
+    /**
+     * Open text file for reading by chunks or lines with bounded heap, file is memory mapped window by window; faster
+     * for large files
+     */
+    public static TextReader mapText(Path from, String encode) throws IOException {
+        return openTextFile(from, encode, false, true);
+    }
+    private static TextReader openTextFile(Path from, String encode, boolean secure, boolean mapped)
+            throws IOException {
+        FileChannel channel = secure ? FileChannel.open(from, READ_OPTIONS, READ_ATTRS)
                 : FileChannel.open(from, READ_OPTIONS);
-        ) {
-            Charset        charset = Charset.forName(encode);
-            CharsetDecoder decoder = charset.newDecoder();
-            ByteBuffer     buffer  = ByteBuffer.allocateDirect((int) channel.size());
-            channel.read(buffer);
-            buffer.flip();
-            CharBuffer charBuf = decoder.decode(buffer);
-            String     result  = charBuf.toString();
-            ((DirectBuffer) buffer).cleaner().clean();
-            return result;
+        try {
+            return new TextReader(channel, Charset.forName(encode).newDecoder(), mapped);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
         }
     }
 
     /**
-     * Write text to file
+     * Write text to file, encoding it chunk by chunk into a pooled direct buffer
      */
-    public static void writeText(Path to, String text, String encode) throws IOException {
+    public static void writeText(Path to, CharSequence text, String encode) throws IOException {
         WriteTextFile(to, text, encode, false);
     }
-    public static void secureWriteText(Path to, String text, String encode) throws IOException {
+    public static void secureWriteText(Path to, CharSequence text, String encode) throws IOException {
         WriteTextFile(to, text, encode, true);
     }
-    public static void WriteTextFile(Path to, String text, String encode, boolean secure) throws IOException {
-        try (FileChannel channel = secure ? FileChannel.open(to, OVERWRITE_OPTIONS, WRITE_ATTRS)
+    public static void WriteTextFile(Path to, CharSequence text, String encode, boolean secure) throws IOException {
+        try (TextWriter writer = openTextWriter(to, encode, secure, 1)) {
+            writer.append(text);
+        }
+    }
+
+    /**
+     * Write segments to file in order, encoded bytes of several buffers are written by one gathering write
+     */
+    public static void writeSegments(Path to, String encode, CharSequence... segments) throws IOException {
+        try (TextWriter writer = openTextWriter(to, encode, false, GATHER_BUFFERS)) {
+            for (CharSequence segment : segments) {
+                writer.append(segment);
+            }
+        }
+    }
+
+    /**
+     * Open writer of file for generated text, file is truncated if exists; written with constant memory
+     */
+    public static TextWriter openWriter(Path to, String encode) throws IOException {
+        return openTextWriter(to, encode, false, GATHER_BUFFERS);
+    }
+    public static TextWriter secureOpenWriter(Path to, String encode) throws IOException {
+        return openTextWriter(to, encode, true, GATHER_BUFFERS);
+    }
+    private static TextWriter openTextWriter(Path to, String encode, boolean secure, int buffers)
+            throws IOException {
+        FileChannel channel = secure ? FileChannel.open(to, OVERWRITE_OPTIONS, WRITE_ATTRS)
                 : FileChannel.open(to, OVERWRITE_OPTIONS);
-        ) {
-            ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(encode));
-            channel.write(buffer);
+        try {
+            return new TextWriter(channel, encode, buffers);
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
         }
     }
 
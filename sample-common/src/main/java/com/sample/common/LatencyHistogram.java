@@ -0,0 +1,99 @@
+package com.sample.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe histogram of non-negative values (such as latency in ns/us/ms) with fixed log-linear buckets:
+ * each power of two range is split into 16 sub-buckets, so relative error is below 1/16. Recording is one
+ * atomic increment without allocation, suitable for hot paths.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS    = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS     = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong      total  = new AtomicLong();
+    private final AtomicLong      max    = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(indexOf(value));
+        total.incrementAndGet();
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Retry until max updated by this or a larger value
+        }
+    }
+
+    public long getCount() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile Eg: 99.0 for p99
+     * @return Upper bound of the bucket holding the percentile, 0 if empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        return valueAtPercentile(copyCounts(null), percentile);
+    }
+
+    /**
+     * Copy bucket counts, so that callers can compute percentiles of an interval by subtracting two copies
+     *
+     * @param into Reused array if not null
+     */
+    public long[] copyCounts(long[] into) {
+        long[] result = into == null || into.length != BUCKETS ? new long[BUCKETS] : into;
+        for (int i = 0; i < BUCKETS; i++) {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @param bucketCounts Counts copied by copyCounts, or difference of two copies
+     */
+    public static long valueAtPercentile(long[] bucketCounts, double percentile) {
+        long count = 0;
+        for (long bucketCount : bucketCounts) {
+            count += bucketCount;
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            seen += bucketCounts[i];
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(bucketCounts.length - 1);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int  shift = (index >>> SUB_BITS) - 1;
+        long lower = (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
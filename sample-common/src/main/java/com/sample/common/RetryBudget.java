@@ -0,0 +1,65 @@
+package com.sample.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket limiting retries and hedged requests to a ratio of original requests, so that a failing or slow
+ * backend does not receive multiplied load: each request deposits ratio tokens, each retry withdraws one token.
+ * Thread safe.
+ */
+public class RetryBudget {
+    /**
+     * Fixed-point scale of tokens
+     */
+    private static final long SCALE = 1000;
+
+    private final long       deposit;
+    private final long       capacity;
+    private final AtomicLong tokens;
+
+    /**
+     * @param ratio   Retries allowed per request in the long run, Eg: 0.1 for 10%
+     * @param reserve Retries allowed initially, and max retries saved up, Eg: 10
+     */
+    public RetryBudget(double ratio, int reserve) {
+        if (ratio < 0 || reserve < 0) {
+            throw new IllegalArgumentException("Invalid ratio or reserve");
+        }
+        this.deposit = (long) (ratio * SCALE);
+        this.capacity = Math.max(1L, reserve) * SCALE;
+        this.tokens = new AtomicLong((long) reserve * SCALE);
+    }
+
+    /**
+     * Called once per original request
+     */
+    public void deposit() {
+        long current;
+        long next;
+        do {
+            current = tokens.get();
+            next = Math.min(capacity, current + deposit);
+        } while (current != next && !tokens.compareAndSet(current, next));
+    }
+
+    /**
+     * @return true if a retry is allowed, and its token taken
+     */
+    public boolean tryWithdraw() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    /**
+     * Retries allowed now
+     */
+    public int getAvailable() {
+        return (int) (tokens.get() / SCALE);
+    }
+}
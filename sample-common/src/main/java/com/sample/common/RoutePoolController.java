@@ -0,0 +1,381 @@
+package com.sample.common;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.routing.RouteInfo;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-route metrics and adaptive max connections per route for pools created by HttpClientManager, so that a slow
+ * backend cannot hold most connections of the pool. Limit of each route is adjusted every interval in the way of
+ * gradient concurrency limiters:
+ * - gradient = min(1, tolerance * long-term latency / latency of last interval), or the min gradient if error rate
+ * of last interval is high, limit shrinks with the gradient when backend slows down or fails
+ * - if the route was saturated(threads waiting for lease, or in-flight reached limit), sqrt(limit) is added as queue
+ * allowance so that limit probes upward while latency stays flat
+ * Http client should be created by HttpClientManager.createHttpClient(controller, requestConfig) to be measured.
+ */
+public class RoutePoolController implements AutoCloseable {
+    private static Log LOGGER = LogFactory.getLog(RoutePoolController.class);
+
+    /**
+     * Latency of last interval below tolerance * long-term latency is treated as normal
+     */
+    private static final double TOLERANCE       = 1.5;
+    /**
+     * Min ratio kept per interval, also applied when error rate is over threshold
+     */
+    private static final double MIN_GRADIENT    = 0.5;
+    /**
+     * Error rate of an interval treated as backend failing
+     */
+    private static final double ERROR_THRESHOLD = 0.1;
+    /**
+     * Weight of last interval in long-term latency
+     */
+    private static final double LONG_RTT_WEIGHT = 0.05;
+    /**
+     * Weight of new estimation in limit, smooths out noisy intervals
+     */
+    private static final double SMOOTHING       = 0.2;
+
+    /**
+     * Metrics of a route at a point in time
+     */
+    public static class RouteStats {
+        public final HttpRoute route;
+        public final int       limit;
+        public final int       leased;
+        public final int       available;
+        public final int       pending;
+        public final long      requests;
+        public final long      errors;
+        public final long      leaseTimeouts;
+        public final long      latencyP50Micros;
+        public final long      latencyP99Micros;
+        public final long      leaseWaitP50Micros;
+        public final long      leaseWaitP99Micros;
+
+        RouteStats(HttpRoute route, PoolStats stats, RouteState state) {
+            this.route = route;
+            this.limit = stats.getMax();
+            this.leased = stats.getLeased();
+            this.available = stats.getAvailable();
+            this.pending = stats.getPending();
+            this.requests = state.requests.sum();
+            this.errors = state.errors.sum();
+            this.leaseTimeouts = state.leaseTimeouts.sum();
+            this.latencyP50Micros = state.latencyMicros.getValueAtPercentile(50.0);
+            this.latencyP99Micros = state.latencyMicros.getValueAtPercentile(99.0);
+            this.leaseWaitP50Micros = state.leaseWaitMicros.getValueAtPercentile(50.0);
+            this.leaseWaitP99Micros = state.leaseWaitMicros.getValueAtPercentile(99.0);
+        }
+
+        public double getErrorRate() {
+            return requests == 0 ? 0.0 : (double) errors / requests;
+        }
+    }
+
+    static final class RouteState {
+        final LatencyHistogram latencyMicros   = new LatencyHistogram();
+        final LatencyHistogram leaseWaitMicros = new LatencyHistogram();
+        final LongAdder        requests        = new LongAdder();
+        final LongAdder        errors          = new LongAdder();
+        final LongAdder        leaseTimeouts   = new LongAdder();
+        final LongAdder        intervalCount   = new LongAdder();
+        final LongAdder        intervalErrors  = new LongAdder();
+        final LongAdder        intervalMicros  = new LongAdder();
+        final AtomicInteger    inFlight        = new AtomicInteger();
+        final AtomicInteger    peakInFlight    = new AtomicInteger();
+        double                 longRttMicros;
+    }
+
+    private final PoolingHttpClientConnectionManager   manager;
+    private final int                                  minPerRoute;
+    private final int                                  maxPerRoute;
+    private final long                                 intervalMillis;
+    private final ConcurrentMap<HttpRoute, RouteState> states   = new ConcurrentHashMap<>();
+    private final HttpClientConnectionManager          measured = new MeasuredConnectionManager();
+    private final HttpRequestExecutor                  executor = new MeasuredRequestExecutor();
+    private       ScheduledExecutorService             scheduler;
+
+    /**
+     * @param manager        Pool created by HttpClientManager
+     * @param minPerRoute    Min connections per route kept by controller
+     * @param maxPerRoute    Max connections per route, should not exceed max total of the pool
+     * @param intervalMillis Interval of adjusting limits (ms), Eg: 1000
+     */
+    public RoutePoolController(PoolingHttpClientConnectionManager manager, int minPerRoute, int maxPerRoute,
+            long intervalMillis) {
+        if (minPerRoute <= 0 || maxPerRoute < minPerRoute) {
+            throw new IllegalArgumentException("Invalid connections per route bounds");
+        }
+        this.manager = manager;
+        this.minPerRoute = minPerRoute;
+        this.maxPerRoute = maxPerRoute;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "route-pool-controller");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    adjust();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Failed to adjust connections per route", e);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Pool wrapper timing connection leasing, to be used by http client instead of the pool
+     */
+    HttpClientConnectionManager getConnectionManager() {
+        return measured;
+    }
+
+    /**
+     * Request executor timing exchanges and counting errors(I/O errors and 5xx responses) per route
+     */
+    HttpRequestExecutor getRequestExecutor() {
+        return executor;
+    }
+
+    /**
+     * Metrics of all routes used by the pool
+     */
+    public Map<HttpRoute, RouteStats> getRouteStats() {
+        Map<HttpRoute, RouteStats> result = new LinkedHashMap<>();
+        for (Map.Entry<HttpRoute, RouteState> entry : states.entrySet()) {
+            HttpRoute route = entry.getKey();
+            result.put(route, new RouteStats(route, manager.getStats(route), entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Metrics of a route, null if route not used
+     */
+    public RouteStats getRouteStats(HttpRoute route) {
+        RouteState state = states.get(route);
+        return state == null ? null : new RouteStats(route, manager.getStats(route), state);
+    }
+
+    public PoolStats getTotalStats() {
+        return manager.getTotalStats();
+    }
+
+    /**
+     * Sample last interval of every route and set its limit
+     */
+    synchronized void adjust() {
+        for (Map.Entry<HttpRoute, RouteState> entry : states.entrySet()) {
+            HttpRoute  route   = entry.getKey();
+            RouteState state   = entry.getValue();
+            int        current = manager.getMaxPerRoute(route);
+            int        target  = estimate(state, current, manager.getStats(route).getPending());
+            if (target != current) {
+                manager.setMaxPerRoute(route, target);
+                LOGGER.info("Connections of route " + route + " " + current + " -> " + target);
+            }
+        }
+    }
+
+    /**
+     * @param current Current limit of the route
+     * @param pending Threads waiting for connection of the route
+     * @return New limit computed from the last interval
+     */
+    int estimate(RouteState state, int current, int pending) {
+        long count  = state.intervalCount.sumThenReset();
+        long errors = state.intervalErrors.sumThenReset();
+        long micros = state.intervalMicros.sumThenReset();
+        int  peak   = state.peakInFlight.getAndSet(state.inFlight.get());
+        if (count == 0) {
+            return clamp(current);
+        }
+        double rtt = (double) micros / count;
+        state.longRttMicros = state.longRttMicros == 0.0 ? rtt
+                : state.longRttMicros * (1.0 - LONG_RTT_WEIGHT) + rtt * LONG_RTT_WEIGHT;
+        double gradient = (double) errors / count > ERROR_THRESHOLD ? MIN_GRADIENT
+                : Math.max(MIN_GRADIENT, Math.min(1.0, TOLERANCE * state.longRttMicros / Math.max(1.0, rtt)));
+        boolean saturated = pending > 0 || peak >= current;
+        double  estimated = current * gradient + (saturated ? Math.sqrt(current) : 0.0);
+        double  smoothed  = current * (1.0 - SMOOTHING) + estimated * SMOOTHING;
+        return clamp((int) (smoothed > current ? Math.ceil(smoothed) : Math.floor(smoothed)));
+    }
+
+    private int clamp(int limit) {
+        return Math.max(minPerRoute, Math.min(maxPerRoute, limit));
+    }
+
+    RouteState stateOf(HttpRoute route) {
+        RouteState state = states.get(route);
+        if (state == null) {
+            RouteState created = new RouteState();
+            state = states.putIfAbsent(route, created);
+            if (state == null) {
+                state = created;
+                manager.setMaxPerRoute(route, clamp(manager.getMaxPerRoute(route)));
+            }
+        }
+        return state;
+    }
+
+    void recordExchange(RouteState state, long micros, boolean error) {
+        state.requests.increment();
+        state.intervalCount.increment();
+        state.intervalMicros.add(micros);
+        state.latencyMicros.record(micros);
+        if (error) {
+            state.errors.increment();
+            state.intervalErrors.increment();
+        }
+    }
+
+    /**
+     * Times exchanges on leased connections, route is taken from client context
+     */
+    private class MeasuredRequestExecutor extends HttpRequestExecutor {
+        @Override
+        public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context)
+                throws IOException, HttpException {
+            RouteInfo route = HttpClientContext.adapt(context).getHttpRoute();
+            if (!(route instanceof HttpRoute)) {
+                return super.execute(request, conn, context);
+            }
+            RouteState state    = stateOf((HttpRoute) route);
+            int        inFlight = state.inFlight.incrementAndGet();
+            int        peak;
+            while (inFlight > (peak = state.peakInFlight.get()) && !state.peakInFlight.compareAndSet(peak, inFlight)) {
+                // Retry until peak updated
+            }
+            long    start = System.nanoTime();
+            boolean error = true;
+            try {
+                HttpResponse response = super.execute(request, conn, context);
+                error = response.getStatusLine().getStatusCode() >= 500;
+                return response;
+            } finally {
+                state.inFlight.decrementAndGet();
+                recordExchange(state, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), error);
+            }
+        }
+    }
+
+    /**
+     * Delegates to the pool, timing how long threads wait for connections of each route
+     */
+    private class MeasuredConnectionManager implements HttpClientConnectionManager {
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            final RouteState        routeState = stateOf(route);
+            final ConnectionRequest request    = manager.requestConnection(route, state);
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit unit)
+                        throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    long start = System.nanoTime();
+                    try {
+                        HttpClientConnection connection = request.get(timeout, unit);
+                        routeState.leaseWaitMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                        return connection;
+                    } catch (ConnectionPoolTimeoutException e) {
+                        routeState.leaseTimeouts.increment();
+                        throw e;
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+
+        @Override
+        public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration,
+                TimeUnit timeUnit) {
+            manager.releaseConnection(conn, newState, validDuration, timeUnit);
+        }
+
+        @Override
+        public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context)
+                throws IOException {
+            manager.connect(conn, route, connectTimeout, context);
+        }
+
+        @Override
+        public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+            manager.upgrade(conn, route, context);
+        }
+
+        @Override
+        public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context)
+                throws IOException {
+            manager.routeComplete(conn, route, context);
+        }
+
+        @Override
+        public void closeIdleConnections(long idletime, TimeUnit tunit) {
+            manager.closeIdleConnections(idletime, tunit);
+        }
+
+        @Override
+        public void closeExpiredConnections() {
+            manager.closeExpiredConnections();
+        }
+
+        @Override
+        public void shutdown() {
+            close();
+            manager.shutdown();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.sample.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Decodes text of a file chunk by chunk, so files of any size are read with bounded memory. Bytes come either from a
+ * direct buffer of BufferPool filled by channel reads, or from memory mapped windows of the file; created by
+ * IoUtil.openText/mapText. Not thread safe.
+ */
+public class TextReader implements Closeable, Iterable<String> {
+    /**
+     * Size of direct buffer for chunked reads
+     */
+    static final int  CHUNK_SIZE  = 64 * 1024;
+    /**
+     * Max size of a mapped window, a window never exceeds 2GB so larger files are mapped window by window
+     */
+    static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private static final int CHARS_SIZE = 8192;
+
+    private final FileChannel    channel;
+    private final CharsetDecoder decoder;
+    private final boolean        mapped;
+    private final long           size;
+    private final CharBuffer     chars = CharBuffer.allocate(CHARS_SIZE);
+    private final StringBuilder  line  = new StringBuilder();
+    private       ByteBuffer     bytes;
+    private       long           position;
+    private       boolean        eof;
+    private       boolean        flushed;
+    private       boolean        skipLf;
+
+    TextReader(FileChannel channel, CharsetDecoder decoder, boolean mapped) throws IOException {
+        this.channel = channel;
+        this.decoder = decoder;
+        this.mapped = mapped;
+        this.size = channel.size();
+        if (mapped) {
+            bytes = ByteBuffer.allocate(0);
+        } else {
+            bytes = BufferPool.DEFAULT.acquire(CHUNK_SIZE);
+            bytes.flip();
+        }
+        chars.flip();
+    }
+
+    /**
+     * Next decoded chunk, valid until the next call of any read method
+     *
+     * @return null at end of file
+     */
+    public CharSequence nextChunk() throws IOException {
+        if (!chars.hasRemaining() && !decode()) {
+            return null;
+        }
+        CharBuffer chunk = chars.slice();
+        chars.position(chars.limit());
+        return chunk;
+    }
+
+    /**
+     * Next line without terminator(\n, \r or \r\n)
+     *
+     * @return null at end of file
+     */
+    public String nextLine() throws IOException {
+        line.setLength(0);
+        boolean found = false;
+        while (chars.hasRemaining() || decode()) {
+            if (skipLf) {
+                skipLf = false;
+                if (chars.get(chars.position()) == '\n') {
+                    chars.get();
+                    continue;
+                }
+            }
+            found = true;
+            int start = chars.position();
+            int end   = chars.limit();
+            for (int i = start; i < end; i++) {
+                char c = chars.get(i);
+                if (c == '\n' || c == '\r') {
+                    line.append(chars, 0, i - start);
+                    chars.position(i + 1);
+                    skipLf = c == '\r';
+                    return line.toString();
+                }
+            }
+            line.append(chars);
+            chars.position(end);
+        }
+        return found ? line.toString() : null;
+    }
+
+    /**
+     * Lines of the rest of file, IOException is rethrown as UncheckedIOException
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = nextLine();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Decode more chars into empty char buffer
+     *
+     * @return false at end of file
+     */
+    private boolean decode() throws IOException {
+        chars.clear();
+        try {
+            while (!flushed && chars.position() == 0) {
+                CoderResult result = decoder.decode(bytes, chars, eof);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                if (result.isUnderflow()) {
+                    if (eof) {
+                        decoder.flush(chars);
+                        flushed = true;
+                    } else {
+                        fill();
+                    }
+                }
+            }
+        } finally {
+            chars.flip();
+        }
+        return chars.hasRemaining();
+    }
+
+    /**
+     * Keep undecoded bytes and load the following ones
+     */
+    private void fill() throws IOException {
+        if (mapped) {
+            long start = position - bytes.remaining();
+            long count = Math.min(WINDOW_SIZE, size - start);
+            if (count <= bytes.remaining()) {
+                eof = true;
+                return;
+            }
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, count);
+            position = start + count;
+            return;
+        }
+        bytes.compact();
+        int read = channel.read(bytes);
+        bytes.flip();
+        eof = read < 0;
+    }
+
+    /**
+     * Close file and give back pooled buffer
+     */
+    @Override
+    public void close() throws IOException {
+        if (!mapped && bytes != null) {
+            BufferPool.DEFAULT.release(bytes);
+        }
+        bytes = null;
+        channel.close();
+    }
+}
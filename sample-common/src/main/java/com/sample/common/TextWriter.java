@@ -0,0 +1,179 @@
+package com.sample.common;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writer encoding text incrementally into direct buffers of BufferPool, full buffers are written to the file by one
+ * gathering write, so text of any size is written with constant memory and without byte[] copies. Encoders are cached
+ * per thread and charset. Created by IoUtil.openWriter, not thread safe.
+ */
+public class TextWriter extends Writer {
+    /**
+     * Size of each direct buffer
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<Map<String, CharsetEncoder>> ENCODERS
+            = new ThreadLocal<Map<String, CharsetEncoder>>() {
+        @Override
+        protected Map<String, CharsetEncoder> initialValue() {
+            return new HashMap<>();
+        }
+    };
+
+    private final FileChannel    channel;
+    private final String         encode;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer[]   buffers;
+    private final CharBuffer     pending = CharBuffer.allocate(2);
+    private       int            current;
+    private       boolean        closed;
+
+    /**
+     * @param buffers Buffers filled before a gathering write, 1 for plain writes
+     */
+    TextWriter(FileChannel channel, String encode, int buffers) {
+        if (buffers <= 0) {
+            throw new IllegalArgumentException("Invalid buffer count");
+        }
+        this.channel = channel;
+        this.encode = encode;
+        CharsetEncoder cached = ENCODERS.get().remove(encode);
+        this.encoder = cached != null ? cached : Charset.forName(encode)
+                                                        .newEncoder()
+                                                        .onMalformedInput(CodingErrorAction.REPLACE)
+                                                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.buffers = new ByteBuffer[buffers];
+        for (int i = 0; i < buffers; i++) {
+            this.buffers[i] = BufferPool.DEFAULT.acquire(BUFFER_SIZE);
+        }
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        encode(CharBuffer.wrap(chars, offset, length));
+    }
+
+    @Override
+    public void write(String text, int offset, int length) throws IOException {
+        encode(CharBuffer.wrap(text, offset, offset + length));
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        encode(CharBuffer.wrap(new char[]{(char) c}));
+    }
+
+    @Override
+    public TextWriter append(CharSequence text) throws IOException {
+        encode(CharBuffer.wrap(text == null ? "null" : text));
+        return this;
+    }
+
+    @Override
+    public TextWriter append(CharSequence text, int start, int end) throws IOException {
+        encode(CharBuffer.wrap(text == null ? "null" : text, start, end));
+        return this;
+    }
+
+    /**
+     * A surrogate pair split between writes is kept in pending until its second char comes
+     */
+    private void encode(CharBuffer chars) throws IOException {
+        if (closed) {
+            throw new IOException("Writer closed");
+        }
+        while (pending.position() > 0 && chars.hasRemaining()) {
+            pending.put(chars.get());
+            pending.flip();
+            encode(pending, false);
+            pending.compact();
+        }
+        if (pending.position() == 0) {
+            encode(chars, false);
+            pending.put(chars);
+        }
+    }
+
+    private void encode(CharBuffer chars, boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffers[current], endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (!result.isOverflow()) {
+                return;
+            }
+            next();
+        }
+    }
+
+    private void next() throws IOException {
+        if (current + 1 < buffers.length) {
+            current++;
+        } else {
+            writeOut();
+        }
+    }
+
+    /**
+     * Write encoded bytes of all buffers by one gathering write
+     */
+    private void writeOut() throws IOException {
+        for (int i = 0; i <= current; i++) {
+            buffers[i].flip();
+        }
+        while (buffers[current].hasRemaining()) {
+            channel.write(buffers, 0, current + 1);
+        }
+        for (int i = 0; i <= current; i++) {
+            buffers[i].clear();
+        }
+        current = 0;
+    }
+
+    /**
+     * Write encoded bytes to the file, chars of an incomplete surrogate pair are kept
+     */
+    @Override
+    public void flush() throws IOException {
+        if (!closed) {
+            writeOut();
+        }
+    }
+
+    /**
+     * Finish encoding and write the rest, then close file and give back buffers and encoder
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            pending.flip();
+            encode(pending, true);
+            while (encoder.flush(buffers[current]).isOverflow()) {
+                next();
+            }
+            writeOut();
+        } finally {
+            closed = true;
+            for (ByteBuffer buffer : buffers) {
+                BufferPool.DEFAULT.release(buffer);
+            }
+            ENCODERS.get().put(encode, encoder.reset());
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.sample.common;
+
+import org.apache.http.client.cache.InputLimit;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.client.cache.ResourceFactory;
+import org.apache.http.impl.client.cache.HeapResource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores bodies of cached responses in heap when not larger than memory threshold, otherwise in files of cache
+ * folder which are memory mapped when read, so large bodies take no heap. Files are deleted when entries are evicted
+ * (see MappedFileResource for files still mapped).
+ */
+class TieredResourceFactory implements ResourceFactory {
+    private static final int CHUNK_SIZE = 8192;
+
+    private final Path       folder;
+    private final int        memoryThreshold;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param folder          Folder of disk tier, created if not exists
+     * @param memoryThreshold Max body size (bytes) kept in heap
+     */
+    TieredResourceFactory(Path folder, int memoryThreshold) throws IOException {
+        this.folder = Files.createDirectories(folder);
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    @Override
+    public Resource generate(String requestId, InputStream stream, InputLimit limit) throws IOException {
+        ByteArrayOutputStream memory = new ByteArrayOutputStream(Math.min(memoryThreshold, CHUNK_SIZE));
+        byte[]                chunk  = new byte[CHUNK_SIZE];
+        long                  total  = 0L;
+        int                   read;
+        while ((read = stream.read(chunk)) != -1) {
+            total += read;
+            if (total > memoryThreshold) {
+                return spill(memory, chunk, read, total, stream, limit);
+            }
+            memory.write(chunk, 0, read);
+            if (limit != null && total > limit.getValue()) {
+                limit.reached();
+                break;
+            }
+        }
+        return new HeapResource(memory.toByteArray());
+    }
+
+    /**
+     * Move body read so far to a new file and continue streaming into it
+     */
+    private Resource spill(ByteArrayOutputStream memory, byte[] chunk, int read, long total, InputStream stream,
+            InputLimit limit) throws IOException {
+        Path file = folder.resolve(System.currentTimeMillis() + "-" + sequence.incrementAndGet() + ".body");
+        try (FileChannel channel = FileChannel.open(file, IoUtil.OVERWRITE_OPTIONS)) {
+            write(channel, ByteBuffer.wrap(memory.toByteArray()));
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            buffer.limit(read);
+            while (true) {
+                write(channel, buffer);
+                if (limit != null && total > limit.getValue()) {
+                    limit.reached();
+                    break;
+                }
+                if ((read = stream.read(chunk)) == -1) {
+                    break;
+                }
+                total += read;
+                buffer.clear();
+                buffer.limit(read);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return new MappedFileResource(file, total);
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public Resource copy(String requestId, Resource resource) throws IOException {
+        try (InputStream stream = resource.getInputStream()) {
+            return generate(requestId, stream, null);
+        }
+    }
+
+    /**
+     * Body in file of disk tier. Each stream maps the file, the mapping is released by GC once the stream and its
+     * buffer are unreachable. Disposing deletes the file at once where open mappings do not prevent it (POSIX, the
+     * mappings keep reading the unlinked file); otherwise (Windows) the delete is retried by later disposals and at
+     * exit, after GC released the mappings.
+     */
+    static class MappedFileResource implements Resource {
+        private static final long serialVersionUID = 2L;
+
+        /**
+         * Files whose delete failed as still mapped, retried by following disposals
+         */
+        private static final Queue<String> UNDELETED = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Path as string, as Path is not serializable
+         */
+        private final    String  file;
+        private final    long    length;
+        private volatile boolean disposed;
+
+        MappedFileResource(Path file, long length) {
+            this.file = file.toString();
+            this.length = length;
+        }
+
+        Path getFile() {
+            return Paths.get(file);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (disposed) {
+                throw new IOException("Resource disposed: " + file);
+            }
+            try (FileChannel channel = FileChannel.open(getFile(), IoUtil.READ_OPTIONS)) {
+                return new BufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0L, length));
+            }
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public void dispose() {
+            disposed = true;
+            for (Iterator<String> iterator = UNDELETED.iterator(); iterator.hasNext(); ) {
+                if (delete(iterator.next())) {
+                    iterator.remove();
+                }
+            }
+            if (!delete(file)) {
+                UNDELETED.add(file);
+                Paths.get(file).toFile().deleteOnExit();
+            }
+        }
+
+        private static boolean delete(String file) {
+            try {
+                Files.deleteIfExists(Paths.get(file));
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Input stream reading a mapped buffer, closing drops the buffer so that GC can release the mapping
+     */
+    private static class BufferInputStream extends InputStream {
+        private MappedByteBuffer buffer;
+
+        BufferInputStream(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private MappedByteBuffer buffer() throws IOException {
+            MappedByteBuffer buffer = this.buffer;
+            if (buffer == null) {
+                throw new IOException("Stream closed");
+            }
+            return buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            MappedByteBuffer buffer = buffer();
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            MappedByteBuffer buffer = buffer();
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return buffer().remaining();
+        }
+
+        @Override
+        public void close() {
+            buffer = null;
+        }
+    }
+}
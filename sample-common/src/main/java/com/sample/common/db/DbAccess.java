@@ -9,10 +9,32 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Savepoint;
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 abstract public class DbAccess<T extends Incremental> {
-    private static Log        LOGGER = LogFactory.getLog(DbAccess.class);
-    private        DataSource dataSource;
+    private static Log            LOGGER             = LogFactory.getLog(DbAccess.class);
+    /**
+     * Default rows per JDBC batch (and per transaction) for insertAll
+     */
+    private static final int      DEFAULT_BATCH_SIZE = 500;
+    private        DataSource     dataSource;
+    private        int            batchSize          = DEFAULT_BATCH_SIZE;
+    /**
+     * Null if ids are generated by database
+     */
+    private        IdAllocator    idAllocator;
+
+    private final List<ChildLink<T, ?>> childLinks = new ArrayList<>();
 
     abstract public T newInstance();
 
@@ -20,23 +42,74 @@ abstract public class DbAccess<T extends Incremental> {
         dataSource = source;
     }
 
+    /**
+     * @param size Rows per JDBC batch used by insertAll, each batch is committed by its own transaction
+     */
+    public void setBatchSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Batch size should be positive");
+        }
+        batchSize = size;
+    }
+
+    /**
+     * Set strategy to assign ids before insert, null (default) to read ids generated by database. If ids are
+     * assigned before insert, statement4Insert and setInsertData should also insert the id column by
+     * instance.getId()
+     */
+    public void setIdAllocator(IdAllocator allocator) {
+        idAllocator = allocator;
+    }
+
+    /**
+     * @return Allocator assigning ids before insert, null if ids are generated by database
+     */
+    public IdAllocator getIdAllocator() {
+        return idAllocator;
+    }
+
+    /**
+     * @return true if no id allocator is set, so ids are generated by database on insert
+     */
+    public boolean isIdGeneratedByDatabase() {
+        return idAllocator == null;
+    }
+
+    /**
+     * Prepare insert statement on the pooled connection, DbAccess closes it when the call ends. A call prepares it
+     * once for all its batches; to reuse statements across calls, enable the statement cache of the pool (see
+     * DataSourceManager.enableStatementCache), which keeps them per connection behind its own proxies.
+     */
     abstract public PreparedStatement statement4Insert(Connection connection);
 
     abstract public void setInsertData(PreparedStatement stmt, T instance, int parentId);
 
     abstract void insertChildren(Connection connection, T instance) throws SQLException;
 
+    /**
+     * Fill instance by current row of resultSet, used by select/stream
+     */
+    abstract public void getSelectData(ResultSet resultSet, T instance) throws SQLException;
+
     public void insert(T instance, int parentId) throws SQLException {
         try (
                 Connection connection = dataSource.getConnection();
                 PreparedStatement stmt = statement4Insert(connection);
         ) {
             connection.setAutoCommit(false);
+            IdAllocator allocator = idAllocator;
+            if (allocator != null) {
+                instance.setId(allocator.nextId());
+            }
             setInsertData(stmt, instance, parentId);
             stmt.executeUpdate();
-            try (ResultSet resultSet = stmt.getGeneratedKeys()) {
-                resultSet.next();
-                instance.setId(resultSet.getInt(1));
+            try {
+                if (allocator == null) {
+                    try (ResultSet resultSet = stmt.getGeneratedKeys()) {
+                        resultSet.next();
+                        instance.setId(resultSet.getInt(1));
+                    }
+                }
                 insertChildren(connection, instance);
                 connection.commit();
             } catch (SQLException e0) {
@@ -58,11 +131,17 @@ abstract public class DbAccess<T extends Incremental> {
         ) {
             Savepoint savepoint = null;
             try {
+                IdAllocator allocator = idAllocator;
+                if (allocator != null) {
+                    instance.setId(allocator.nextId());
+                }
                 stmt.executeUpdate();
-                ResultSet resultSet = stmt.getGeneratedKeys();
-                resultSet.next();
-                instance.setId(resultSet.getInt(1));
-                resultSet.close();
+                if (allocator == null) {
+                    ResultSet resultSet = stmt.getGeneratedKeys();
+                    resultSet.next();
+                    instance.setId(resultSet.getInt(1));
+                    resultSet.close();
+                }
                 savepoint = connection.setSavepoint();
                 insertChildren(connection, instance);
                 connection.commit();
@@ -83,5 +162,382 @@ abstract public class DbAccess<T extends Incremental> {
         }
     }
 
+    /**
+     * Insert instances by JDBC batches of one statement from statement4Insert on one connection: every chunk of
+     * batchSize rows is one batch and one commit, generated keys are written back to instances in insertion order.
+     * If a chunk fails, only this chunk is rolled back, chunks committed before are kept.
+     * Note: For MySQL, add rewriteBatchedStatements=true to jdbc url so that a batch is sent as multi-row insert
+     */
+    public void insertAll(Collection<T> instances, int parentId) throws SQLException {
+        if (instances.isEmpty()) {
+            return;
+        }
+        try (
+                Connection connection = dataSource.getConnection();
+                PreparedStatement stmt = statement4Insert(connection);
+        ) {
+            connection.setAutoCommit(false);
+            List<T> chunk     = new ArrayList<>(Math.min(batchSize, instances.size()));
+            int[]   parentIds = new int[Math.min(batchSize, instances.size())];
+            Arrays.fill(parentIds, parentId);
+            for (T instance : instances) {
+                chunk.add(instance);
+                if (chunk.size() == batchSize) {
+                    insertChunk(connection, stmt, chunk, parentIds);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                insertChunk(connection, stmt, chunk, parentIds);
+            }
+        }
+    }
+
+    private void insertChunk(Connection connection, PreparedStatement stmt, List<T> chunk, int[] parentIds)
+            throws SQLException {
+        try {
+            executeBatch(stmt, chunk, 0, chunk.size(), parentIds);
+            for (T instance : chunk) {
+                insertChildren(connection, instance);
+            }
+            connection.commit();
+        } catch (SQLException e0) {
+            try {
+                connection.rollback();
+            } catch (SQLException e1) {
+                LOGGER.error("Failed to execute rollback SQL batch insert", e1);
+            }
+            throw e0;
+        }
+    }
+
+    /**
+     * Insert instances with their own parent ids by JDBC batches in one transaction (group commit), used by
+     * WriteBehindQueue. parentIds[i] is the parent id of instances[i].
+     */
+    void insertGroup(List<T> instances, int[] parentIds) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = statement4Insert(connection)) {
+                for (int from = 0, size = instances.size(); from < size; from += batchSize) {
+                    executeBatch(stmt, instances, from, Math.min(size, from + batchSize), parentIds);
+                }
+                for (T instance : instances) {
+                    insertChildren(connection, instance);
+                }
+                connection.commit();
+            } catch (SQLException e0) {
+                try {
+                    connection.rollback();
+                } catch (SQLException e1) {
+                    LOGGER.error("Failed to execute rollback SQL group insert", e1);
+                }
+                throw e0;
+            }
+        }
+    }
+
+    /**
+     * Insert instances[from, to) by one batch of stmt and assign ids before insert or write back generated keys,
+     * transaction and statement are left to caller. parentIds[i] is the parent id of instances[i].
+     */
+    private void executeBatch(PreparedStatement stmt, List<T> instances, int from, int to, int[] parentIds)
+            throws SQLException {
+        IdAllocator allocator = idAllocator;
+        // Batch left by a failed chunk
+        stmt.clearBatch();
+        for (int i = from; i < to; i++) {
+            T instance = instances.get(i);
+            if (allocator != null) {
+                instance.setId(allocator.nextId());
+            }
+            setInsertData(stmt, instance, parentIds[i]);
+            stmt.addBatch();
+        }
+        stmt.executeBatch();
+        if (allocator != null) {
+            return;
+        }
+        try (ResultSet resultSet = stmt.getGeneratedKeys()) {
+            for (int i = from; i < to; i++) {
+                if (!resultSet.next()) {
+                    throw new SQLException("Generated keys are less than inserted rows");
+                }
+                instances.get(i).setId(resultSet.getInt(1));
+            }
+        }
+    }
+
+    /**
+     * Extractor of children for graph persistence
+     *
+     * @param <P> Parent type
+     * @param <C> Child type
+     */
+    public interface ChildrenOf<P, C> {
+        Collection<C> children(P parent);
+    }
+
+    /**
+     * Register a child level for insertGraph: children extracted from each instance are inserted by access with
+     * the instance id as parentId. Links of access are followed recursively for deeper levels.
+     */
+    public <C extends Incremental> void addChildLink(DbAccess<C> access, ChildrenOf<T, C> children) {
+        childLinks.add(new ChildLink<>(access, children));
+    }
+
+    /**
+     * Insert instances and all their descendants registered by addChildLink level by level: each level gathers
+     * rows of all parents of the previous level, so that a tree costs O(depth) batches of statements instead of
+     * one statement per node. Children parentId are taken from keys generated by the previous level.
+     * All levels run in one transaction: if any level fails, the whole graph is rolled back and the exception is
+     * thrown, so a partial graph is never persisted (ids already written back to instances are then stale).
+     * Note: insertChildren is not called in this mode, the child links replace it.
+     */
+    public void insertGraph(Collection<T> instances, int parentId) throws SQLException {
+        if (instances.isEmpty()) {
+            return;
+        }
+        Map<DbAccess<?>, LevelBatch<?>> level = new LinkedHashMap<>();
+        LevelBatch<T>                   roots = new LevelBatch<>(this);
+        for (T instance : instances) {
+            roots.add(instance, parentId);
+        }
+        level.put(this, roots);
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            int depth = 0;
+            try {
+                while (!level.isEmpty()) {
+                    Map<DbAccess<?>, LevelBatch<?>> next = new LinkedHashMap<>();
+                    for (LevelBatch<?> batch : level.values()) {
+                        batch.insert(connection);
+                        batch.collectChildren(next);
+                    }
+                    level = next;
+                    depth++;
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e0) {
+                try {
+                    connection.rollback();
+                    LOGGER.error("Failed to execute SQL insert graph level " + depth, e0);
+                } catch (SQLException e1) {
+                    LOGGER.error("Failed to execute rollback SQL insert graph", e1);
+                }
+                throw e0;
+            }
+        }
+    }
+
+    /**
+     * Visitor of selected rows
+     */
+    public interface RowVisitor<T> {
+        /**
+         * @return false to stop reading following rows
+         */
+        boolean visit(T instance) throws SQLException;
+    }
+
+    /**
+     * Read rows by forward-only, read-only cursor and pass them to visitor one by one, so that memory does not
+     * grow with row count.
+     *
+     * @param sql           Select SQL with '?' placeholders for params
+     * @param fetchSize     Rows fetched per round trip, Integer.MIN_VALUE means row by row streaming for MySQL
+     * @param reuseInstance If true, one instance from newInstance() is refilled for every row, so visitor should
+     *                      not keep reference to it
+     */
+    public void select(String sql, int fetchSize, boolean reuseInstance, RowVisitor<T> visitor, Object... params)
+            throws SQLException {
+        try (Connection connection = readConnection()) {
+            try (
+                    PreparedStatement stmt = statement4Select(connection, sql, fetchSize, params);
+                    ResultSet resultSet = stmt.executeQuery();
+            ) {
+                T instance = reuseInstance ? newInstance() : null;
+                while (resultSet.next()) {
+                    T row = reuseInstance ? instance : newInstance();
+                    getSelectData(resultSet, row);
+                    if (!visitor.visit(row)) {
+                        break;
+                    }
+                }
+                connection.commit();
+            } finally {
+                restoreAutoCommit(connection);
+            }
+        }
+    }
+
+    /**
+     * Read rows as a lazy stream backed by forward-only, read-only cursor, the stream holds a connection until it
+     * is closed, so use it in try-with-resources. SQLException while reading is thrown as IllegalStateException.
+     *
+     * @see #select(String, int, boolean, RowVisitor, Object...)
+     */
+    public Stream<T> stream(String sql, int fetchSize, final boolean reuseInstance, Object... params)
+            throws SQLException {
+        final Connection        connection = readConnection();
+        final PreparedStatement stmt;
+        final ResultSet         resultSet;
+        try {
+            stmt = statement4Select(connection, sql, fetchSize, params);
+            resultSet = stmt.executeQuery();
+        } catch (SQLException e0) {
+            restoreAutoCommit(connection);
+            try {
+                connection.close();
+            } catch (SQLException e1) {
+                LOGGER.error("Failed to close connection of SQL select", e1);
+            }
+            throw e0;
+        }
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                                                                       Spliterator.ORDERED | Spliterator.NONNULL) {
+            final T instance = reuseInstance ? newInstance() : null;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!resultSet.next()) {
+                        return false;
+                    }
+                    T row = reuseInstance ? instance : newInstance();
+                    getSelectData(resultSet, row);
+                    action.accept(row);
+                    return true;
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Failed to read row of SQL select", e);
+                }
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    resultSet.close();
+                    stmt.close();
+                    connection.commit();
+                } catch (SQLException e) {
+                    LOGGER.error("Failed to close SQL select", e);
+                } finally {
+                    restoreAutoCommit(connection);
+                    try {
+                        connection.close();
+                    } catch (SQLException e) {
+                        LOGGER.error("Failed to close connection of SQL select", e);
+                    }
+                }
+            }
+        });
+    }
 
+    /**
+     * Reads go to replicas if data source is a RoutingDataSource
+     */
+    private Connection readConnection() throws SQLException {
+        if (dataSource instanceof RoutingDataSource) {
+            return ((RoutingDataSource) dataSource).getReadOnlyConnection();
+        }
+        return dataSource.getConnection();
+    }
+
+    /**
+     * Cursor should run in a transaction, otherwise some drivers(such as PostgreSQL) ignore fetch size
+     */
+    private static PreparedStatement statement4Select(Connection connection, String sql, int fetchSize,
+            Object... params) throws SQLException {
+        connection.setAutoCommit(false);
+        PreparedStatement stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                                                             ResultSet.CONCUR_READ_ONLY);
+        try {
+            stmt.setFetchSize(fetchSize);
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+            return stmt;
+        } catch (SQLException e) {
+            stmt.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Turn auto-commit back on, which statement4Select turned off, before connection returns to pool
+     */
+    private static void restoreAutoCommit(Connection connection) {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            LOGGER.error("Failed to restore auto-commit of SQL select", e);
+        }
+    }
+
+    private static final class ChildLink<P extends Incremental, C extends Incremental> {
+        final DbAccess<C>      access;
+        final ChildrenOf<P, C> children;
+
+        ChildLink(DbAccess<C> access, ChildrenOf<P, C> children) {
+            this.access = access;
+            this.children = children;
+        }
+
+        @SuppressWarnings("unchecked")
+        void collect(P parent, Map<DbAccess<?>, LevelBatch<?>> next) {
+            Collection<C> items = children.children(parent);
+            if (items == null || items.isEmpty()) {
+                return;
+            }
+            LevelBatch<C> batch = (LevelBatch<C>) next.get(access);
+            if (batch == null) {
+                batch = new LevelBatch<>(access);
+                next.put(access, batch);
+            }
+            for (C item : items) {
+                batch.add(item, parent.getId());
+            }
+        }
+    }
+
+    /**
+     * Rows of one DbAccess within a level of insertGraph
+     */
+    private static final class LevelBatch<E extends Incremental> {
+        final DbAccess<E> access;
+        final List<E>     instances = new ArrayList<>();
+        int[] parentIds = new int[16];
+
+        LevelBatch(DbAccess<E> access) {
+            this.access = access;
+        }
+
+        void add(E instance, int parentId) {
+            int size = instances.size();
+            if (size == parentIds.length) {
+                parentIds = Arrays.copyOf(parentIds, size << 1);
+            }
+            parentIds[size] = parentId;
+            instances.add(instance);
+        }
+
+        void insert(Connection connection) throws SQLException {
+            try (PreparedStatement stmt = access.statement4Insert(connection)) {
+                for (int from = 0, size = instances.size(); from < size; from += access.batchSize) {
+                    int to = Math.min(size, from + access.batchSize);
+                    access.executeBatch(stmt, instances, from, to, parentIds);
+                }
+            }
+        }
+
+        void collectChildren(Map<DbAccess<?>, LevelBatch<?>> next) {
+            for (ChildLink<E, ?> link : access.childLinks) {
+                for (E instance : instances) {
+                    link.collect(instance, next);
+                }
+            }
+        }
+    }
 }
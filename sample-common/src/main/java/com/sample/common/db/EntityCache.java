@@ -0,0 +1,157 @@
+package com.sample.common.db;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of entities keyed by Incremental id, bounded by size with LRU eviction and per-entry TTL.
+ * Inserts through this cache are written to database then cached (write-through).
+ */
+public class EntityCache<T extends Incremental> {
+    private final DbAccess<T>  access;
+    private final String       sql4SelectById;
+    private final long         ttlNanos;
+    private final IntLruMap<T> entries;
+    private final AtomicLong   hits      = new AtomicLong();
+    private final AtomicLong   misses    = new AtomicLong();
+    private final AtomicLong   evictions = new AtomicLong();
+
+    /**
+     * @param access         DbAccess implementing getSelectData
+     * @param sql4SelectById Select SQL with one '?' placeholder for id, Eg: select id, name from item where id = ?
+     * @param maxSize        Max entities in cache
+     * @param ttl            Default time to live of entities (ms)
+     */
+    public EntityCache(DbAccess<T> access, String sql4SelectById, int maxSize, long ttl) {
+        this.access = access;
+        this.sql4SelectById = sql4SelectById;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttl);
+        this.entries = new IntLruMap<>(maxSize);
+    }
+
+    /**
+     * Get entity from cache, or load it from database and cache it
+     *
+     * @return null if not found in database
+     */
+    public T get(int id) throws SQLException {
+        T instance = getIfPresent(id);
+        if (instance != null) {
+            return instance;
+        }
+        final Object[] loaded = new Object[1];
+        access.select(sql4SelectById, 1, false, new DbAccess.RowVisitor<T>() {
+            @Override
+            public boolean visit(T row) {
+                loaded[0] = row;
+                return false;
+            }
+        }, id);
+        @SuppressWarnings("unchecked")
+        T row = (T) loaded[0];
+        if (row != null) {
+            put(row);
+        }
+        return row;
+    }
+
+    /**
+     * Get entity from cache only, hit/miss are counted
+     */
+    public T getIfPresent(int id) {
+        T instance;
+        synchronized (entries) {
+            instance = entries.get(id, System.nanoTime());
+        }
+        (instance == null ? misses : hits).incrementAndGet();
+        return instance;
+    }
+
+    public void put(T instance) {
+        putUntil(instance, System.nanoTime() + ttlNanos);
+    }
+
+    /**
+     * @param ttl Time to live of this entity (ms)
+     */
+    public void put(T instance, long ttl) {
+        putUntil(instance, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl));
+    }
+
+    private void putUntil(T instance, long expireAt) {
+        T evicted;
+        synchronized (entries) {
+            evicted = entries.put(instance.getId(), instance, expireAt);
+        }
+        if (evicted != null) {
+            evictions.incrementAndGet();
+        }
+    }
+
+    public void invalidate(int id) {
+        synchronized (entries) {
+            entries.remove(id);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * DbAccess.insert then cache the instance
+     */
+    public void insert(T instance, int parentId) throws SQLException {
+        access.insert(instance, parentId);
+        put(instance);
+    }
+
+    /**
+     * DbAccess.insert2 then cache the instance
+     */
+    public void insert2(T instance, int parentId) throws SQLException {
+        access.insert2(instance, parentId);
+        put(instance);
+    }
+
+    /**
+     * DbAccess.insertAll then cache the instances
+     */
+    public void insertAll(Collection<T> instances, int parentId) throws SQLException {
+        access.insertAll(instances, parentId);
+        for (T instance : instances) {
+            put(instance);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Entities removed because cache was full, expired entities are not counted
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public double getHitRate() {
+        long hit   = hits.get();
+        long total = hit + misses.get();
+        return total == 0 ? 0.0 : (double) hit / total;
+    }
+}
@@ -0,0 +1,14 @@
+package com.sample.common.db;
+
+import java.sql.SQLException;
+
+/**
+ * Strategy of DbAccess to assign Incremental ids before insert. Without an allocator, ids are generated by database
+ * on insert and read back by getGeneratedKeys.
+ */
+public interface IdAllocator {
+    /**
+     * @return Id for the next row
+     */
+    int nextId() throws SQLException;
+}
@@ -0,0 +1,190 @@
+package com.sample.common.db;
+
+import java.util.Arrays;
+
+/**
+ * Bounded int-keyed map with LRU eviction and per-entry expiration, keys are not boxed: entries are kept in
+ * parallel arrays linked by index in access order, and found by an open addressing (linear probing) index.
+ * Not thread safe.
+ */
+class IntLruMap<V> {
+    private static final int NONE = -1;
+
+    private final int      capacity;
+    private final int      mask;
+    private final int[]    table;   // Slot => node index, NONE if empty
+    private final int[]    keys;
+    private final Object[] values;
+    private final long[]   expires; // System.nanoTime() deadline of node
+    private final int[]    prev;    // Node towards most recently used
+    private final int[]    next;    // Node towards least recently used
+    private       int      head     = NONE;
+    private       int      tail     = NONE;
+    private       int      freeNode = NONE; // Free nodes linked by next
+    private       int      size;
+
+    IntLruMap(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be positive");
+        }
+        this.capacity = capacity;
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+        this.mask = tableSize - 1;
+        this.table = new int[tableSize];
+        Arrays.fill(table, NONE);
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+        this.expires = new long[capacity];
+        this.prev = new int[capacity];
+        this.next = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            next[i] = i + 1 < capacity ? i + 1 : NONE;
+        }
+        freeNode = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Value and mark it most recently used, null if absent or expired(expired entry is removed)
+     */
+    @SuppressWarnings("unchecked")
+    V get(int key, long now) {
+        int slot = find(key);
+        if (slot == NONE) {
+            return null;
+        }
+        int node = table[slot];
+        if (expires[node] - now <= 0) {
+            removeSlot(slot);
+            return null;
+        }
+        moveToHead(node);
+        return (V) values[node];
+    }
+
+    /**
+     * Put value valid until expireAt(System.nanoTime() based)
+     *
+     * @return Evicted least recently used value if map was full, otherwise null
+     */
+    @SuppressWarnings("unchecked")
+    V put(int key, V value, long expireAt) {
+        int slot = find(key);
+        if (slot != NONE) {
+            int node = table[slot];
+            values[node] = value;
+            expires[node] = expireAt;
+            moveToHead(node);
+            return null;
+        }
+        V evicted = null;
+        if (size == capacity) {
+            evicted = (V) values[tail];
+            removeSlot(find(keys[tail]));
+        }
+        int node = freeNode;
+        freeNode = next[node];
+        keys[node] = key;
+        values[node] = value;
+        expires[node] = expireAt;
+        linkHead(node);
+        slot = hash(key) & mask;
+        while (table[slot] != NONE) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = node;
+        size++;
+        return evicted;
+    }
+
+    boolean remove(int key) {
+        int slot = find(key);
+        if (slot == NONE) {
+            return false;
+        }
+        removeSlot(slot);
+        return true;
+    }
+
+    void clear() {
+        while (tail != NONE) {
+            removeSlot(find(keys[tail]));
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int find(int key) {
+        int slot = hash(key) & mask;
+        int node;
+        while ((node = table[slot]) != NONE) {
+            if (keys[node] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NONE;
+    }
+
+    /**
+     * Remove entry by backward shift deletion, so that probe sequences stay without tombstones
+     */
+    private void removeSlot(int slot) {
+        int node = table[slot];
+        unlink(node);
+        values[node] = null;
+        next[node] = freeNode;
+        freeNode = node;
+        size--;
+
+        int gap = slot;
+        int i   = (slot + 1) & mask;
+        while (table[i] != NONE) {
+            int home = hash(keys[table[i]]) & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                table[gap] = table[i];
+                gap = i;
+            }
+            i = (i + 1) & mask;
+        }
+        table[gap] = NONE;
+    }
+
+    private void linkHead(int node) {
+        prev[node] = NONE;
+        next[node] = head;
+        if (head != NONE) {
+            prev[head] = node;
+        }
+        head = node;
+        if (tail == NONE) {
+            tail = node;
+        }
+    }
+
+    private void unlink(int node) {
+        if (prev[node] == NONE) {
+            head = next[node];
+        } else {
+            next[prev[node]] = next[node];
+        }
+        if (next[node] == NONE) {
+            tail = prev[node];
+        } else {
+            prev[next[node]] = prev[node];
+        }
+    }
+
+    private void moveToHead(int node) {
+        if (node != head) {
+            unlink(node);
+            linkHead(node);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package com.sample.common.db;
+
+import com.alibaba.druid.filter.FilterAdapter;
+import com.alibaba.druid.filter.FilterChain;
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.pool.DruidPooledConnection;
+import com.alibaba.druid.pool.GetConnectionTimeoutException;
+import com.sample.common.LatencyHistogram;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Unified metrics of pools created by DataSourceManager (Druid or Hikari): connection acquiring latency, usage
+ * time, borrow/return/timeout counts and pool gauges. Values are recorded by pool hooks(Druid filter, Hikari
+ * metrics tracker) with little allocation, and can be pulled by snapshot() or JMX.
+ */
+public class PoolMetrics implements PoolMetricsMBean {
+    private static final String JMX_DOMAIN = "com.sample.common.db";
+
+    /**
+     * Gauges read from pool, and max size changed at runtime
+     */
+    interface PoolProbe {
+        int getActive();
+
+        int getIdle();
+
+        int getTotal();
+
+        int getPending();
+
+        int getMax();
+
+        void setMax(int max);
+    }
+
+    /**
+     * Metrics at a point in time, rates are per second since previous snapshot
+     */
+    public static class Snapshot {
+        public final int    active;
+        public final int    idle;
+        public final int    total;
+        public final int    pending;
+        public final int    max;
+        public final long   borrows;
+        public final long   returns;
+        public final long   timeouts;
+        public final double borrowRate;
+        public final double returnRate;
+        public final long   acquireP50Micros;
+        public final long   acquireP99Micros;
+        public final long   acquireMaxMicros;
+        public final long   usageP50Millis;
+        public final long   usageP99Millis;
+        public final long   usageMaxMillis;
+
+        Snapshot(PoolMetrics metrics, double borrowRate, double returnRate) {
+            PoolProbe probe = metrics.probe;
+            this.active = probe.getActive();
+            this.idle = probe.getIdle();
+            this.total = probe.getTotal();
+            this.pending = probe.getPending();
+            this.max = probe.getMax();
+            this.borrows = metrics.borrows.sum();
+            this.returns = metrics.returns.sum();
+            this.timeouts = metrics.timeouts.sum();
+            this.borrowRate = borrowRate;
+            this.returnRate = returnRate;
+            this.acquireP50Micros = metrics.getAcquireP50Micros();
+            this.acquireP99Micros = metrics.getAcquireP99Micros();
+            this.acquireMaxMicros = metrics.getAcquireMaxMicros();
+            this.usageP50Millis = metrics.getUsageP50Millis();
+            this.usageP99Millis = metrics.getUsageP99Millis();
+            this.usageMaxMillis = metrics.getUsageMaxMillis();
+        }
+    }
+
+    private final String           name;
+    private final PoolProbe        probe;
+    private final LatencyHistogram acquireNanos = new LatencyHistogram();
+    private final LatencyHistogram usageMillis  = new LatencyHistogram();
+    private final LongAdder        borrows      = new LongAdder();
+    private final LongAdder        returns      = new LongAdder();
+    private final LongAdder        timeouts     = new LongAdder();
+    private       long             lastSampleNanos;
+    private       long             lastBorrows;
+    private       long             lastReturns;
+    private       ObjectName       objectName;
+
+    PoolMetrics(String name, PoolProbe probe) {
+        this.name = name;
+        this.probe = probe;
+        this.lastSampleNanos = System.nanoTime();
+    }
+
+    /**
+     * Attach metrics to Druid pool by a filter, should be called before the pool initialized
+     */
+    public static PoolMetrics attach(final DruidDataSource src) {
+        PoolMetrics metrics = new PoolMetrics(src.getName(), new PoolProbe() {
+            @Override
+            public int getActive() {
+                return src.getActiveCount();
+            }
+
+            @Override
+            public int getIdle() {
+                return src.getPoolingCount();
+            }
+
+            @Override
+            public int getTotal() {
+                return src.getActiveCount() + src.getPoolingCount();
+            }
+
+            @Override
+            public int getPending() {
+                return src.getWaitThreadCount();
+            }
+
+            @Override
+            public int getMax() {
+                return src.getMaxActive();
+            }
+
+            @Override
+            public void setMax(int max) {
+                src.setMaxActive(max);
+            }
+        });
+        src.getProxyFilters().add(new DruidMetricsFilter(metrics));
+        return metrics;
+    }
+
+    /**
+     * Attach metrics to Hikari pool by a metrics tracker, should be called before the pool started
+     */
+    public static PoolMetrics attach(final HikariDataSource src) {
+        final PoolStats[] stats   = new PoolStats[1];
+        PoolMetrics       metrics = new PoolMetrics(src.getPoolName(), new PoolProbe() {
+            @Override
+            public int getActive() {
+                return stats[0] == null ? 0 : stats[0].getActiveConnections();
+            }
+
+            @Override
+            public int getIdle() {
+                return stats[0] == null ? 0 : stats[0].getIdleConnections();
+            }
+
+            @Override
+            public int getTotal() {
+                return stats[0] == null ? 0 : stats[0].getTotalConnections();
+            }
+
+            @Override
+            public int getPending() {
+                return stats[0] == null ? 0 : stats[0].getPendingThreads();
+            }
+
+            @Override
+            public int getMax() {
+                return src.getHikariConfigMXBean().getMaximumPoolSize();
+            }
+
+            @Override
+            public void setMax(int max) {
+                src.getHikariConfigMXBean().setMaximumPoolSize(max);
+            }
+        });
+        final HikariMetricsTracker tracker = new HikariMetricsTracker(metrics);
+        src.setMetricsTrackerFactory(new MetricsTrackerFactory() {
+            @Override
+            public IMetricsTracker create(String poolName, PoolStats poolStats) {
+                stats[0] = poolStats;
+                return tracker;
+            }
+        });
+        return metrics;
+    }
+
+    void recordAcquire(long nanos) {
+        borrows.increment();
+        acquireNanos.record(nanos);
+    }
+
+    void recordUsage(long millis) {
+        returns.increment();
+        usageMillis.record(millis);
+    }
+
+    /**
+     * Borrow timed out after waiting nanos, the wait counts in acquiring latency but not as a borrow
+     */
+    void recordTimeout(long nanos) {
+        timeouts.increment();
+        acquireNanos.record(nanos);
+    }
+
+    /**
+     * Hikari reports the wait of a timed-out borrow as acquired before the timeout, take back that borrow
+     */
+    void recordTimeoutAfterAcquire() {
+        borrows.decrement();
+        timeouts.increment();
+    }
+
+    PoolProbe getProbe() {
+        return probe;
+    }
+
+    /**
+     * Histogram of connection acquiring latency(ns)
+     */
+    public LatencyHistogram getAcquireNanos() {
+        return acquireNanos;
+    }
+
+    /**
+     * Histogram of connection usage time(ms) from borrow to return
+     */
+    public LatencyHistogram getUsageMillis() {
+        return usageMillis;
+    }
+
+    /**
+     * Pull all metrics, borrow/return rates are computed since the previous call
+     */
+    public synchronized Snapshot snapshot() {
+        long   now        = System.nanoTime();
+        long   borrowed   = borrows.sum();
+        long   returned   = returns.sum();
+        double seconds    = Math.max(1L, now - lastSampleNanos) / 1e9;
+        double borrowRate = (borrowed - lastBorrows) / seconds;
+        double returnRate = (returned - lastReturns) / seconds;
+        lastSampleNanos = now;
+        lastBorrows = borrowed;
+        lastReturns = returned;
+        return new Snapshot(this, borrowRate, returnRate);
+    }
+
+    /**
+     * Register to platform MBean server as com.sample.common.db:type=PoolMetrics,name=[pool name]
+     */
+    public synchronized void registerMBean() throws JMException {
+        if (objectName != null) {
+            return;
+        }
+        ObjectName objName = new ObjectName(JMX_DOMAIN + ":type=PoolMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objName);
+        objectName = objName;
+    }
+
+    public synchronized void unregisterMBean() throws JMException {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        objectName = null;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return probe.getActive();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return probe.getIdle();
+    }
+
+    @Override
+    public int getTotalConnections() {
+        return probe.getTotal();
+    }
+
+    @Override
+    public int getPendingThreads() {
+        return probe.getPending();
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return probe.getMax();
+    }
+
+    @Override
+    public long getBorrowCount() {
+        return borrows.sum();
+    }
+
+    @Override
+    public long getReturnCount() {
+        return returns.sum();
+    }
+
+    @Override
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public long getAcquireP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(acquireNanos.getValueAtPercentile(50.0));
+    }
+
+    @Override
+    public long getAcquireP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(acquireNanos.getValueAtPercentile(99.0));
+    }
+
+    @Override
+    public long getAcquireMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(acquireNanos.getMax());
+    }
+
+    @Override
+    public long getUsageP50Millis() {
+        return usageMillis.getValueAtPercentile(50.0);
+    }
+
+    @Override
+    public long getUsageP99Millis() {
+        return usageMillis.getValueAtPercentile(99.0);
+    }
+
+    @Override
+    public long getUsageMaxMillis() {
+        return usageMillis.getMax();
+    }
+
+    /**
+     * Times connection acquiring and usage of Druid pool
+     */
+    private static class DruidMetricsFilter extends FilterAdapter {
+        private final PoolMetrics                                metrics;
+        // Borrow time of connections in use, Druid's own connected time belongs to its statistics
+        private final ConcurrentMap<DruidPooledConnection, Long> borrowed = new ConcurrentHashMap<>();
+
+        DruidMetricsFilter(PoolMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public DruidPooledConnection dataSource_getConnection(FilterChain chain, DruidDataSource dataSource,
+                long maxWaitMillis) throws SQLException {
+            long start = System.nanoTime();
+            try {
+                DruidPooledConnection connection = chain.dataSource_connect(dataSource, maxWaitMillis);
+                long                  now        = System.nanoTime();
+                metrics.recordAcquire(now - start);
+                borrowed.put(connection, now);
+                return connection;
+            } catch (GetConnectionTimeoutException e) {
+                metrics.recordTimeout(System.nanoTime() - start);
+                throw e;
+            }
+        }
+
+        @Override
+        public void dataSource_releaseConnection(FilterChain chain, DruidPooledConnection connection)
+                throws SQLException {
+            Long since = borrowed.remove(connection);
+            if (since != null) {
+                metrics.recordUsage(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - since));
+            }
+            chain.dataSource_recycle(connection);
+        }
+    }
+
+    /**
+     * Receives connection acquiring and usage times from Hikari pool
+     */
+    private static class HikariMetricsTracker implements IMetricsTracker {
+        private final PoolMetrics metrics;
+
+        HikariMetricsTracker(PoolMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            metrics.recordAcquire(elapsedAcquiredNanos);
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            metrics.recordUsage(elapsedBorrowedMillis);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            metrics.recordTimeoutAfterAcquire();
+        }
+    }
+}
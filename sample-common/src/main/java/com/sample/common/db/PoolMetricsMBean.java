@@ -0,0 +1,36 @@
+package com.sample.common.db;
+
+/**
+ * JMX view of PoolMetrics, times are in microseconds for acquiring and milliseconds for usage
+ */
+public interface PoolMetricsMBean {
+    String getName();
+
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    int getTotalConnections();
+
+    int getPendingThreads();
+
+    int getMaxConnections();
+
+    long getBorrowCount();
+
+    long getReturnCount();
+
+    long getTimeoutCount();
+
+    long getAcquireP50Micros();
+
+    long getAcquireP99Micros();
+
+    long getAcquireMaxMicros();
+
+    long getUsageP50Millis();
+
+    long getUsageP99Millis();
+
+    long getUsageMaxMillis();
+}
@@ -0,0 +1,190 @@
+package com.sample.common.db;
+
+import com.sample.common.LatencyHistogram;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resize Druid/Hikari pool at runtime by feedback of PoolMetrics, within [minSize, maxSize]:
+ * - Additive increase: if p95 acquiring wait of last interval exceeds target, or threads are waiting
+ * - Multiplicative decrease: if utilization stays low for several intervals (hysteresis), never below the
+ * connections needed by Little's law (borrow rate * mean usage time) with headroom
+ */
+public class PoolSizeController implements AutoCloseable {
+    private static Log LOGGER = LogFactory.getLog(PoolSizeController.class);
+
+    /**
+     * Utilization(active/max) below this is treated as over-provisioned
+     */
+    private static final double LOW_UTILIZATION = 0.5;
+    /**
+     * Consecutive low utilization intervals before decreasing
+     */
+    private static final int    DECREASE_AFTER  = 3;
+    /**
+     * Ratio kept after a decrease
+     */
+    private static final double DECREASE_FACTOR = 0.75;
+    /**
+     * Connections over Little's law estimation kept for bursts
+     */
+    private static final double LITTLE_HEADROOM = 1.5;
+    /**
+     * Percentile of acquiring wait compared with target
+     */
+    private static final double WAIT_PERCENTILE = 95.0;
+
+    private final    PoolMetrics              metrics;
+    private final    int                      minSize;
+    private final    int                      maxSize;
+    private final    int                      step;
+    private final    long                     targetWaitNanos;
+    private final    long                     intervalMillis;
+    private final    AtomicLong               increases    = new AtomicLong();
+    private final    AtomicLong               decreases    = new AtomicLong();
+    private          ScheduledExecutorService scheduler;
+    private          long[]                   lastCounts;
+    private          long[]                   counts;
+    private          long                     lastBorrows;
+    private          long                     lastSampleNanos;
+    private          int                      lowStreak;
+    private volatile String                   lastDecision = "none";
+
+    /**
+     * @param metrics        Metrics attached to the pool to control
+     * @param minSize        Min value of max pool size, should not be less than minIdle of Druid pool
+     * @param maxSize        Max value of max pool size
+     * @param step           Connections added per increase, Eg: 2
+     * @param targetWait     Target p95 wait time to acquire connection (ms), Eg: 10
+     * @param intervalMillis Interval of samples and decisions (ms), Eg: 5000
+     */
+    public PoolSizeController(PoolMetrics metrics, int minSize, int maxSize, int step, long targetWait,
+            long intervalMillis) {
+        if (minSize <= 0 || maxSize < minSize || step <= 0) {
+            throw new IllegalArgumentException("Invalid pool size bounds or step");
+        }
+        this.metrics = metrics;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.step = step;
+        this.targetWaitNanos = TimeUnit.MILLISECONDS.toNanos(targetWait);
+        this.intervalMillis = intervalMillis;
+        this.lastCounts = metrics.getAcquireNanos().copyCounts(null);
+        this.counts = new long[lastCounts.length];
+        this.lastBorrows = metrics.getBorrowCount();
+        this.lastSampleNanos = System.nanoTime();
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "pool-size-controller-" + metrics.getName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    adjust();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Failed to adjust pool " + metrics.getName(), e);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Sample metrics of the last interval and resize pool if needed
+     *
+     * @return New max pool size
+     */
+    synchronized int adjust() {
+        PoolMetrics.PoolProbe probe = metrics.getProbe();
+        counts = metrics.getAcquireNanos().copyCounts(counts);
+        for (int i = 0; i < counts.length; i++) {
+            long count = counts[i];
+            counts[i] = count - lastCounts[i];
+            lastCounts[i] = count;
+        }
+        long   waitNanos = LatencyHistogram.valueAtPercentile(counts, WAIT_PERCENTILE);
+        long   now       = System.nanoTime();
+        long   borrows   = metrics.getBorrowCount();
+        double rate      = (borrows - lastBorrows) * 1e9 / Math.max(1L, now - lastSampleNanos);
+        lastBorrows = borrows;
+        lastSampleNanos = now;
+
+        int current = probe.getMax();
+        int pending = probe.getPending();
+        int target  = current;
+        if (waitNanos > targetWaitNanos || pending > 0) {
+            lowStreak = 0;
+            target = Math.min(maxSize, current + step);
+            if (target != current) {
+                lastDecision = String.format("increase %d -> %d: p95 wait %dus, pending %d", current, target,
+                                             TimeUnit.NANOSECONDS.toMicros(waitNanos), pending);
+            }
+        } else if ((double) probe.getActive() / current < LOW_UTILIZATION) {
+            if (++lowStreak >= DECREASE_AFTER) {
+                lowStreak = 0;
+                // Little's law: connections in use = borrow rate * mean usage time
+                int needed = (int) Math.ceil(rate * metrics.getUsageP50Millis() / 1000.0 * LITTLE_HEADROOM);
+                target = Math.max(minSize, Math.max(needed, (int) (current * DECREASE_FACTOR)));
+                target = Math.min(target, current);
+                if (target != current) {
+                    lastDecision = String.format("decrease %d -> %d: active %d, borrow rate %.1f/s", current,
+                                                 target, probe.getActive(), rate);
+                }
+            }
+        } else {
+            lowStreak = 0;
+        }
+        if (target != current) {
+            probe.setMax(target);
+            (target > current ? increases : decreases).incrementAndGet();
+            LOGGER.info("Pool " + metrics.getName() + " " + lastDecision);
+        }
+        return target;
+    }
+
+    public long getIncreaseCount() {
+        return increases.get();
+    }
+
+    public long getDecreaseCount() {
+        return decreases.get();
+    }
+
+    /**
+     * Description of the last resize
+     */
+    public String getLastDecision() {
+        return lastDecision;
+    }
+
+    /**
+     * Current max pool size
+     */
+    public int getPoolSize() {
+        return metrics.getProbe().getMax();
+    }
+}
@@ -0,0 +1,316 @@
+package com.sample.common.db;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Read/write split data source over one primary pool and N replica pools(Eg: created by DataSourceManager):
+ * - getConnection() goes to primary, unless called within readOnly(...) on a thread holding no primary connection
+ * - getReadOnlyConnection() goes to the replica with least outstanding connections (ties by round robin)
+ * - Replica failing to give connection is taken out of rotation; a background task validates every replica, taking
+ * failed ones out and recovered ones back; if no replica is healthy, reads go to primary
+ */
+public class RoutingDataSource implements DataSource, AutoCloseable {
+    private static Log LOGGER = LogFactory.getLog(RoutingDataSource.class);
+
+    /**
+     * Timeout(s) to validate connection of a replica during health check
+     */
+    private static final int VALIDATION_TIMEOUT = 2;
+
+    private static final class Replica {
+        final    DataSource    source;
+        final    AtomicInteger outstanding = new AtomicInteger();
+        volatile boolean       healthy     = true;
+
+        Replica(DataSource source) {
+            this.source = source;
+        }
+    }
+
+    private final DataSource                 primary;
+    private final Replica[]                  replicas;
+    private final AtomicInteger              nextReplica = new AtomicInteger();
+    private final ScheduledExecutorService   checker;
+    private final ThreadLocal<Boolean>       readOnly    = new ThreadLocal<>();
+    /**
+     * Primary connections opened and not closed by current thread, reads go to primary while it is positive
+     */
+    private final ThreadLocal<AtomicInteger> primaryDepth = new ThreadLocal<AtomicInteger>() {
+        @Override
+        protected AtomicInteger initialValue() {
+            return new AtomicInteger();
+        }
+    };
+
+    /**
+     * Primary connections opened within readOnly(...) by current thread, no longer counted once the task ends
+     */
+    private final ThreadLocal<List<CountedConnection>> primaryOpened = new ThreadLocal<>();
+
+    /**
+     * @param primary             Data source for writes and transactions
+     * @param replicas            Data sources for read-only work
+     * @param healthCheckInterval Interval to validate replicas (ms)
+     */
+    public RoutingDataSource(DataSource primary, List<? extends DataSource> replicas, long healthCheckInterval) {
+        this.primary = primary;
+        this.replicas = new Replica[replicas.size()];
+        for (int i = 0; i < this.replicas.length; i++) {
+            this.replicas[i] = new Replica(replicas.get(i));
+        }
+        checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "replica-health-check");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        checker.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkReplicas();
+            }
+        }, healthCheckInterval, healthCheckInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run task with getConnection() routed to replicas, connections opened by task should be closed within it;
+     * primary connections the task leaks no longer keep later reads of the thread on primary
+     */
+    public <V> V readOnly(Callable<V> task) throws Exception {
+        Boolean                 previous      = readOnly.get();
+        List<CountedConnection> outerOpened   = primaryOpened.get();
+        List<CountedConnection> primaryByTask = new ArrayList<>();
+        readOnly.set(Boolean.TRUE);
+        primaryOpened.set(primaryByTask);
+        try {
+            return task.call();
+        } finally {
+            if (previous == null) {
+                readOnly.remove();
+            } else {
+                readOnly.set(previous);
+            }
+            if (outerOpened == null) {
+                primaryOpened.remove();
+            } else {
+                primaryOpened.set(outerOpened);
+            }
+            for (CountedConnection connection : primaryByTask) {
+                if (connection.uncount()) {
+                    LOGGER.warn("Primary connection opened and not closed within read-only task");
+                }
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (readOnly.get() != null && primaryDepth.get().get() == 0) {
+            return getReadOnlyConnection();
+        }
+        return primaryConnection(primary.getConnection());
+    }
+
+    /**
+     * Connection from a healthy replica, or from primary if current thread holds primary connection (so that
+     * it reads its own writes) or no replica is healthy
+     */
+    public Connection getReadOnlyConnection() throws SQLException {
+        if (primaryDepth.get().get() > 0) {
+            return primaryConnection(primary.getConnection());
+        }
+        int count = replicas.length;
+        for (int attempt = 0; attempt < count; attempt++) {
+            Replica replica = select();
+            if (replica == null) {
+                break;
+            }
+            replica.outstanding.incrementAndGet();
+            try {
+                return wrap(replica.source.getConnection(), replica.outstanding);
+            } catch (SQLException e) {
+                replica.outstanding.decrementAndGet();
+                replica.healthy = false;
+                LOGGER.warn("Replica taken out of rotation: " + replica.source, e);
+            }
+        }
+        return primaryConnection(primary.getConnection());
+    }
+
+    /**
+     * Healthy replicas in rotation
+     */
+    public int getHealthyReplicas() {
+        int healthy = 0;
+        for (Replica replica : replicas) {
+            if (replica.healthy) {
+                healthy++;
+            }
+        }
+        return healthy;
+    }
+
+    /**
+     * Least outstanding connections among healthy replicas, scanning from a rotating start for fairness
+     */
+    private Replica select() {
+        int     count = replicas.length;
+        int     start = count == 0 ? 0 : (nextReplica.getAndIncrement() & Integer.MAX_VALUE) % count;
+        Replica best  = null;
+        for (int i = 0; i < count; i++) {
+            Replica replica = replicas[(start + i) % count];
+            if (replica.healthy && (best == null || replica.outstanding.get() < best.outstanding.get())) {
+                best = replica;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Validate every replica, so that a failed one leaves rotation before reads hit it
+     */
+    private void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean valid;
+            try (Connection connection = replica.source.getConnection()) {
+                valid = connection.isValid(VALIDATION_TIMEOUT);
+            } catch (SQLException e) {
+                LOGGER.debug("Replica failed validation: " + replica.source, e);
+                valid = false;
+            }
+            if (valid != replica.healthy) {
+                replica.healthy = valid;
+                LOGGER.info((valid ? "Replica back to rotation: " : "Replica taken out of rotation: ")
+                            + replica.source);
+            }
+        }
+    }
+
+    private Connection primaryConnection(Connection connection) {
+        AtomicInteger depth = primaryDepth.get();
+        depth.incrementAndGet();
+        CountedConnection       counted = new CountedConnection(connection, depth);
+        List<CountedConnection> opened  = primaryOpened.get();
+        if (opened != null) {
+            opened.add(counted);
+        }
+        return wrap(counted);
+    }
+
+    private static Connection wrap(Connection connection, AtomicInteger counter) {
+        return wrap(new CountedConnection(connection, counter));
+    }
+
+    private static Connection wrap(CountedConnection counted) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                                                   new Class<?>[]{Connection.class}, counted);
+    }
+
+    /**
+     * Connection proxy decreasing counter once when connection closed or uncounted
+     */
+    private static final class CountedConnection implements InvocationHandler {
+        private final Connection    connection;
+        private final AtomicInteger counter;
+        private final AtomicBoolean counted = new AtomicBoolean(true);
+
+        CountedConnection(Connection connection, AtomicInteger counter) {
+            this.connection = connection;
+            this.counter = counter;
+        }
+
+        /**
+         * @return True if connection was still counted
+         */
+        boolean uncount() {
+            if (counted.compareAndSet(true, false)) {
+                counter.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("close".equals(method.getName())) {
+                uncount();
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        checker.shutdownNow();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Routing data source uses credentials of its pools");
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primary.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primary.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primary.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return primary.getParentLogger();
+    }
+}
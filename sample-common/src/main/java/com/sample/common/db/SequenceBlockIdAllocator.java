@@ -0,0 +1,113 @@
+package com.sample.common.db;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hi/lo id allocator: reserves a block of ids from a sequence table by one short transaction, then hands them
+ * out lock-free from an AtomicLong, so entities get ids before they touch the database.
+ * Sequence table, Eg:
+ * create table id_sequence(name varchar(64) primary key, next_id bigint not null)
+ */
+public class SequenceBlockIdAllocator implements IdAllocator {
+    private static final String TABLE = "id_sequence";
+
+    /**
+     * Ids [next, end) reserved from sequence table
+     */
+    private static final class Block {
+        final AtomicLong next;
+        final long       end;
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+
+    private final    DataSource dataSource;
+    private final    String     name;
+    private final    int        blockSize;
+    private volatile Block      block = new Block(0L, 0L);
+
+    /**
+     * @param dataSource Data source of sequence table
+     * @param name       Sequence name, usually the table name of entities
+     * @param blockSize  Ids reserved per round trip
+     */
+    public SequenceBlockIdAllocator(DataSource dataSource, String name, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size should be positive");
+        }
+        this.dataSource = dataSource;
+        this.name = name;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public int nextId() throws SQLException {
+        while (true) {
+            Block current = block;
+            long  id      = current.next.getAndIncrement();
+            if (id < current.end) {
+                if (id > Integer.MAX_VALUE) {
+                    throw new SQLException("Sequence " + name + " exceeds int range");
+                }
+                return (int) id;
+            }
+            synchronized (this) {
+                if (block == current) {
+                    block = reserve();
+                }
+            }
+        }
+    }
+
+    /**
+     * Move sequence forward by blockSize, create sequence row starting from 1 if absent
+     */
+    private Block reserve() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                long end;
+                try (PreparedStatement update = connection.prepareStatement(
+                        "update " + TABLE + " set next_id = next_id + ? where name = ?")) {
+                    update.setLong(1, blockSize);
+                    update.setString(2, name);
+                    if (update.executeUpdate() == 0) {
+                        try (PreparedStatement insert = connection.prepareStatement(
+                                "insert into " + TABLE + "(name, next_id) values(?, ?)")) {
+                            insert.setString(1, name);
+                            insert.setLong(2, 1L + blockSize);
+                            insert.executeUpdate();
+                        }
+                        end = 1L + blockSize;
+                    } else {
+                        try (PreparedStatement select = connection.prepareStatement(
+                                "select next_id from " + TABLE + " where name = ?")) {
+                            select.setString(1, name);
+                            try (ResultSet resultSet = select.executeQuery()) {
+                                resultSet.next();
+                                end = resultSet.getLong(1);
+                            }
+                        }
+                    }
+                }
+                connection.commit();
+                return new Block(end - blockSize, end);
+            } catch (SQLException e0) {
+                try {
+                    connection.rollback();
+                } catch (SQLException e1) {
+                    e0.addSuppressed(e1);
+                }
+                throw e0;
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.sample.common.db;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind queue in front of DbAccess: callers submit instances to a bounded queue and get a future, writer
+ * threads drain the queue and insert many rows per transaction (group commit), so request latency is decoupled
+ * from database commit latency. If a group fails, its rows are retried one by one, so a bad row fails only its own
+ * future.
+ */
+public class WriteBehindQueue<T extends Incremental> implements AutoCloseable {
+    private static Log LOGGER = LogFactory.getLog(WriteBehindQueue.class);
+
+    /**
+     * Interval(ms) for writers to check closing when queue is empty
+     */
+    private static final long POLL_INTERVAL = 100L;
+
+    /**
+     * Behavior of submit when queue is full
+     */
+    public enum Backpressure {
+        /**
+         * Block caller until queue has space
+         */
+        BLOCK,
+        /**
+         * Drop instance, the returned future is completed with RejectedExecutionException
+         */
+        DROP,
+        /**
+         * Throw RejectedExecutionException to caller
+         */
+        FAIL
+    }
+
+    private static final class Entry<T> {
+        final T                    instance;
+        final int                  parentId;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Entry(T instance, int parentId) {
+            this.instance = instance;
+            this.parentId = parentId;
+        }
+    }
+
+    private final    DbAccess<T>             access;
+    private final    BlockingQueue<Entry<T>> queue;
+    private final    Backpressure            backpressure;
+    private final    int                     maxBatch;
+    private final    Thread[]                writers;
+    private final    AtomicLong              dropped = new AtomicLong();
+    private volatile boolean                 closed;
+    private volatile boolean                 terminated;
+
+    /**
+     * @param access       DbAccess to insert rows
+     * @param capacity     Max instances waiting in queue
+     * @param writerCount  Writer threads, each writer uses one connection per transaction
+     * @param maxBatch     Max rows per transaction
+     * @param backpressure Behavior when queue is full
+     */
+    public WriteBehindQueue(DbAccess<T> access, int capacity, int writerCount, int maxBatch,
+            Backpressure backpressure) {
+        if (capacity <= 0 || writerCount <= 0 || maxBatch <= 0) {
+            throw new IllegalArgumentException("Capacity, writer count and batch size should be positive");
+        }
+        this.access = access;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.backpressure = backpressure;
+        this.maxBatch = maxBatch;
+        this.writers = new Thread[writerCount];
+        for (int i = 0; i < writerCount; i++) {
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, "write-behind-" + i);
+            writer.setDaemon(true);
+            writers[i] = writer;
+            writer.start();
+        }
+    }
+
+    /**
+     * Queue instance for insert
+     *
+     * @return Future completed with instance after its id assigned and transaction committed
+     * @throws RejectedExecutionException If queue closed, or queue full with backpressure FAIL
+     */
+    public CompletableFuture<T> submit(T instance, int parentId) {
+        if (closed) {
+            throw new RejectedExecutionException("Write-behind queue closed");
+        }
+        Entry<T> entry = new Entry<>(instance, parentId);
+        switch (backpressure) {
+            case BLOCK:
+                try {
+                    queue.put(entry);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting for queue space", e);
+                }
+                break;
+            case DROP:
+                if (!queue.offer(entry)) {
+                    dropped.incrementAndGet();
+                    entry.future.completeExceptionally(new RejectedExecutionException("Write-behind queue full"));
+                }
+                break;
+            default:
+                if (!queue.offer(entry)) {
+                    dropped.incrementAndGet();
+                    throw new RejectedExecutionException("Write-behind queue full");
+                }
+        }
+        // Queued after close has drained the queue, e.g. by a producer parked in put
+        if (terminated && queue.remove(entry)) {
+            throw new RejectedExecutionException("Write-behind queue closed");
+        }
+        return entry.future;
+    }
+
+    /**
+     * Instances waiting in queue
+     */
+    public int getPending() {
+        return queue.size();
+    }
+
+    /**
+     * Instances rejected because queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Register JVM shutdown hook to flush queue when process exits
+     */
+    public void flushOnShutdown() {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        }, "write-behind-shutdown"));
+    }
+
+    /**
+     * Stop accepting instances and wait writers to flush all queued instances
+     */
+    @Override
+    public void close() {
+        closed = true;
+        boolean interrupted = false;
+        for (Thread writer : writers) {
+            while (writer.isAlive()) {
+                try {
+                    writer.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        // Instances queued by callers racing with close, later ones are removed by their callers
+        terminated = true;
+        Entry<T> entry;
+        while ((entry = queue.poll()) != null) {
+            entry.future.completeExceptionally(new RejectedExecutionException("Write-behind queue closed"));
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        List<Entry<T>> batch     = new ArrayList<>(maxBatch);
+        List<T>        rows      = new ArrayList<>(maxBatch);
+        int[]          parentIds = new int[maxBatch];
+        while (true) {
+            Entry<T> first;
+            try {
+                first = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                first = queue.poll();
+            }
+            if (first == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, maxBatch - 1);
+            for (int i = 0, size = batch.size(); i < size; i++) {
+                Entry<T> entry = batch.get(i);
+                rows.add(entry.instance);
+                parentIds[i] = entry.parentId;
+            }
+            try {
+                access.insertGroup(rows, parentIds);
+                for (Entry<T> entry : batch) {
+                    entry.future.complete(entry.instance);
+                }
+            } catch (Exception e) {
+                if (batch.size() == 1) {
+                    LOGGER.error("Failed to write behind 1 row", e);
+                    first.future.completeExceptionally(e);
+                } else {
+                    insertOneByOne(batch);
+                }
+            }
+            batch.clear();
+            rows.clear();
+        }
+    }
+
+    /**
+     * Retry rows of a failed group by their own transactions, so that only the offending rows fail
+     */
+    private void insertOneByOne(List<Entry<T>> batch) {
+        int[] parentIds = new int[1];
+        for (Entry<T> entry : batch) {
+            parentIds[0] = entry.parentId;
+            try {
+                access.insertGroup(Collections.singletonList(entry.instance), parentIds);
+                entry.future.complete(entry.instance);
+            } catch (Exception e) {
+                LOGGER.error("Failed to write behind row of parent " + entry.parentId, e);
+                entry.future.completeExceptionally(e);
+            }
+        }
+    }
+}
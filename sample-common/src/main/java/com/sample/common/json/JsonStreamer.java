@@ -0,0 +1,205 @@
+package com.sample.common.json;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONReader;
+import com.alibaba.fastjson.serializer.JSONSerializer;
+import com.alibaba.fastjson.serializer.ObjectSerializer;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.serializer.SerializeWriter;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.sample.common.db.DbAccess;
+import com.sample.common.db.Incremental;
+
+import java.io.Closeable;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Streams entities as a JSON array straight to an output, without building a list, a JSON tree or a whole string.
+ * Serializers generated by fastjson are cached per class by the SerializeConfig; chars are written through the
+ * buffer SerializeWriter reuses per thread and flushed to output whenever it is full. Circular reference detection
+ * is disabled, so an instance refilled for every row is written as a new object each time and entities must not
+ * contain cycles.
+ */
+public class JsonStreamer {
+    private final SerializeConfig     config;
+    private final SerializerFeature[] features;
+
+    /**
+     * @param features Features enabled in addition to the defaults of JSON.toJSONString
+     */
+    public JsonStreamer(SerializeConfig config, SerializerFeature... features) {
+        this.config = config;
+        this.features = features;
+    }
+
+    public JsonStreamer() {
+        this(SerializeConfig.getGlobalInstance());
+    }
+
+    /**
+     * Writer of one JSON array, looking up serializer only when class of element changes; must be closed, also when
+     * writing fails, so that SerializeWriter gives its buffer back to the thread
+     */
+    private final class ArrayWriter implements Closeable {
+        private final SerializeWriter  out;
+        private final JSONSerializer   serializer;
+        private       Class<?>         lastClass;
+        private       ObjectSerializer lastCodec;
+        private       long             count;
+        private       boolean          discard;
+
+        ArrayWriter(final Writer writer) {
+            // Output of an unfinished array is dropped when closed, so close neither fails nor writes half an array
+            Writer target = new FilterWriter(writer) {
+                @Override
+                public void write(char[] chars, int offset, int length) throws IOException {
+                    if (!discard) {
+                        writer.write(chars, offset, length);
+                    }
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    if (!discard) {
+                        writer.flush();
+                    }
+                }
+            };
+            out = new SerializeWriter(target, JSON.DEFAULT_GENERATE_FEATURE, features);
+            out.config(SerializerFeature.DisableCircularReferenceDetect, true);
+            serializer = new JSONSerializer(out, config);
+            out.write('[');
+        }
+
+        void write(Object element) throws IOException {
+            if (count++ > 0) {
+                out.write(',');
+            }
+            if (element == null) {
+                out.writeNull();
+                return;
+            }
+            if (element.getClass() != lastClass) {
+                lastClass = element.getClass();
+                lastCodec = serializer.getObjectWriter(lastClass);
+            }
+            lastCodec.write(serializer, element, null, null, 0);
+        }
+
+        long finish() {
+            out.write(']');
+            out.flush();
+            return count;
+        }
+
+        @Override
+        public void close() {
+            discard = true;
+            out.close();
+        }
+    }
+
+    /**
+     * @return Count of elements written
+     */
+    public <T> long writeArray(Iterator<T> elements, Writer writer) throws IOException {
+        try (ArrayWriter array = new ArrayWriter(writer)) {
+            while (elements.hasNext()) {
+                array.write(elements.next());
+            }
+            long count = array.finish();
+            writer.flush();
+            return count;
+        }
+    }
+
+    public <T> long writeArray(Stream<T> elements, OutputStream out) throws IOException {
+        return writeArray(elements.iterator(), new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write to channel such as a FileChannel, channel stays open
+     */
+    public <T> long writeArray(Stream<T> elements, WritableByteChannel channel) throws IOException {
+        return writeArray(elements.iterator(), Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1));
+    }
+
+    /**
+     * Write remaining rows of resultSet, each filled into one reused instance by access.getSelectData
+     */
+    public <T extends Incremental> long writeArray(ResultSet resultSet, DbAccess<T> access, OutputStream out)
+            throws IOException, SQLException {
+        Writer writer   = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        T      instance = access.newInstance();
+        try (ArrayWriter array = new ArrayWriter(writer)) {
+            while (resultSet.next()) {
+                access.getSelectData(resultSet, instance);
+                array.write(instance);
+            }
+            long count = array.finish();
+            writer.flush();
+            return count;
+        }
+    }
+
+    /**
+     * Write rows selected by access.select with a reused instance
+     *
+     * @see DbAccess#select(String, int, boolean, DbAccess.RowVisitor, Object...)
+     */
+    public <T extends Incremental> long writeSelect(DbAccess<T> access, String sql, int fetchSize, OutputStream out,
+            Object... params) throws IOException, SQLException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        try (final ArrayWriter array = new ArrayWriter(writer)) {
+            access.select(sql, fetchSize, true, new DbAccess.RowVisitor<T>() {
+                @Override
+                public boolean visit(T instance) {
+                    try {
+                        array.write(instance);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return true;
+                }
+            }, params);
+            long count = array.finish();
+            writer.flush();
+            return count;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Read a JSON array element by element, only one element is in memory at a time; in is closed when done
+     *
+     * @return Count of elements read
+     */
+    public <T> long readArray(InputStream in, Class<T> type, Consumer<? super T> consumer) {
+        long count = 0L;
+        try (JSONReader reader = new JSONReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            reader.startArray();
+            while (reader.hasNext()) {
+                consumer.accept(reader.readObject(type));
+                count++;
+            }
+            reader.endArray();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,143 @@
+package com.sample.common;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class AppendLogWriterTest extends TestCase {
+    private Path folder;
+
+    @Override
+    protected void setUp() throws IOException {
+        folder = Files.createTempDirectory("append-log");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        for (File file : folder.toFile().listFiles()) {
+            file.delete();
+        }
+        Files.delete(folder);
+    }
+
+    private File[] files() {
+        File[] files = folder.toFile().listFiles();
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                String[] x = a.getName().split("-");
+                String[] y = b.getName().split("-");
+                int      c = Long.compare(Long.parseLong(x[1]), Long.parseLong(y[1]));
+                return c != 0 ? c : Long.compare(Long.parseLong(x[2].substring(0, x[2].indexOf('.'))),
+                                                 Long.parseLong(y[2].substring(0, y[2].indexOf('.'))));
+            }
+        });
+        return files;
+    }
+
+    public void testGroupCommitFromManyThreads() throws Exception {
+        final AppendLogWriter               writer  = new AppendLogWriter(folder, "events", 1L << 30, 0L,
+                                                                          AppendLogWriter.Durability.GROUP, 5L,
+                                                                          100000);
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        List<Thread>                        threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int producer = t;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        CompletableFuture<Void> future = writer.append(
+                                ("producer " + producer + " record " + i + "\n").getBytes(StandardCharsets.UTF_8));
+                        synchronized (futures) {
+                            futures.add(future);
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (CompletableFuture<Void> future : futures) {
+            future.get();
+        }
+        assertEquals(8000, writer.getRecordCount());
+        assertTrue(writer.getBatchCount() < 8000);
+        assertTrue(writer.getSyncCount() > 0);
+        writer.close();
+        assertEquals(8000, Files.readAllLines(writer.getFile(), StandardCharsets.UTF_8).size());
+        try {
+            writer.append(new byte[1]);
+            fail("Appended after close");
+        } catch (RejectedExecutionException e) {
+            assertEquals(0, writer.getQueued());
+        }
+    }
+
+    public void testRolloverBySize() throws Exception {
+        AppendLogWriter writer = new AppendLogWriter(folder, "audit", 10000L, 0L, AppendLogWriter.Durability.BATCH,
+                                                     0L, 1000);
+        StringBuilder expected = new StringBuilder();
+        byte[]        large    = new byte[AppendLogWriter.BUFFER_SIZE + 1];
+        Arrays.fill(large, (byte) 'x');
+        for (int i = 0; i < 500; i++) {
+            String record = String.format("%099d\n", i);
+            writer.append(record.getBytes(StandardCharsets.UTF_8)).get();
+            expected.append(record);
+        }
+        writer.append(large).get();
+        expected.append(new String(large, StandardCharsets.UTF_8));
+        writer.close();
+        assertTrue(writer.getSyncCount() >= writer.getBatchCount());
+
+        File[] files = files();
+        assertTrue(files.length >= 5);
+        StringBuilder actual = new StringBuilder();
+        for (File file : files) {
+            actual.append(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        }
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    public void testUnexpectedFailureTerminatesWriter() throws Exception {
+        AppendLogWriter         writer = new AppendLogWriter(folder, "broken", 1L << 20, 0L,
+                                                             AppendLogWriter.Durability.BATCH, 0L, 100);
+        CompletableFuture<Void> broken = writer.append(null);
+        try {
+            broken.get(5L, TimeUnit.SECONDS);
+            fail("Null record should fail the flusher");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NullPointerException);
+        }
+        List<CompletableFuture<Void>> late     = new ArrayList<>();
+        boolean                       rejected = false;
+        for (int i = 0; i < 100 && !rejected; i++) {
+            try {
+                late.add(writer.append("late\n".getBytes(StandardCharsets.UTF_8)));
+                Thread.sleep(10L);
+            } catch (RejectedExecutionException e) {
+                rejected = true;
+            }
+        }
+        assertTrue(rejected);
+        for (CompletableFuture<Void> future : late) {
+            assertTrue(future.isCompletedExceptionally());
+        }
+        writer.close();
+    }
+}
@@ -0,0 +1,111 @@
+package com.sample.common;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Async client against a local slow server counting concurrent requests
+ */
+public class AsyncHttpClientTest extends TestCase {
+    private HttpServer      server;
+    private ExecutorService executor;
+    private AtomicInteger   concurrent = new AtomicInteger();
+    private AtomicInteger   peak       = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int current = concurrent.incrementAndGet();
+                int max;
+                while (current > (max = peak.get()) && !peak.compareAndSet(max, current)) {
+                    // Retry until peak updated
+                }
+                try {
+                    Thread.sleep(20L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                concurrent.decrementAndGet();
+                byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        executor = Executors.newFixedThreadPool(16);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    public void testLimitsInFlightPerRoute() throws Exception {
+        try (AsyncHttpClient client = HttpAsyncClientManager.createHttpClient(
+                HttpAsyncClientManager.createPool(null, 2, 16, 8, true, true, 5000, -1, true),
+                HttpClientManager.createRequestConfig(), 3, 100)) {
+            List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                futures.add(client.execute(new HttpGet(url())));
+            }
+            for (CompletableFuture<HttpResponse> future : futures) {
+                HttpResponse response = future.get(10L, TimeUnit.SECONDS);
+                assertEquals(200, response.getStatusLine().getStatusCode());
+                assertEquals("ok", EntityUtils.toString(response.getEntity()));
+            }
+            assertTrue("Peak concurrency " + peak.get(), peak.get() <= 3);
+            HttpHost host = new HttpHost("127.0.0.1", server.getAddress().getPort(), "http");
+            assertEquals(0, client.getInFlight(host));
+            assertEquals(0, client.getQueued(host));
+        }
+    }
+
+    public void testRejectsWhenQueueFull() throws Exception {
+        try (AsyncHttpClient client = HttpAsyncClientManager.createHttpClient(
+                HttpAsyncClientManager.createPool(null, 1, 4, 1, true, true, 5000, -1, true),
+                HttpClientManager.createRequestConfig(), 1, 1)) {
+            CompletableFuture<HttpResponse> sent     = client.execute(new HttpGet(url()));
+            CompletableFuture<HttpResponse> queued   = client.execute(new HttpGet(url()));
+            CompletableFuture<HttpResponse> rejected = client.execute(new HttpGet(url()));
+            try {
+                rejected.get();
+                fail("Request over queue limit should be rejected");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            assertEquals(200, sent.get(10L, TimeUnit.SECONDS).getStatusLine().getStatusCode());
+            assertEquals(200, queued.get(10L, TimeUnit.SECONDS).getStatusLine().getStatusCode());
+        }
+    }
+}
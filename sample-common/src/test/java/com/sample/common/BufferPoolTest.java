@@ -0,0 +1,97 @@
+package com.sample.common;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BufferPoolTest extends TestCase {
+    public void testSizeClassesAndReuse() {
+        BufferPool pool   = new BufferPool(4096, 65536, 4, false);
+        ByteBuffer buffer = pool.acquire(5000);
+        assertTrue(buffer.isDirect());
+        assertEquals(8192, buffer.capacity());
+        assertEquals(5000, buffer.limit());
+        assertEquals(8192, pool.getOutstandingBytes());
+        pool.release(buffer);
+        assertEquals(0, pool.getOutstandingBytes());
+
+        assertSame(buffer, pool.acquire(8000));
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+        assertEquals(4096, pool.acquire(1).capacity());
+
+        ByteBuffer large = pool.acquire(100000);
+        assertEquals(100000, large.capacity());
+        pool.release(large);
+        assertNotSame(large, pool.acquire(100000));
+    }
+
+    public void testGlobalFreeListAcrossThreads() throws InterruptedException {
+        final BufferPool       pool    = new BufferPool(4096, 65536, 4, false);
+        final List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            buffers.add(pool.acquire(4096));
+        }
+        for (ByteBuffer buffer : buffers) {
+            pool.release(buffer);
+        }
+        final List<ByteBuffer> acquired = new ArrayList<>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 6; i++) {
+                    acquired.add(pool.acquire(4096));
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        // 2 kept by this thread, 4 in free list, the rest allocated
+        assertEquals(4, pool.getHitCount());
+        assertEquals(8, pool.getMissCount());
+        assertTrue(buffers.containsAll(acquired.subList(0, 4)));
+    }
+
+    public void testLeakDetection() {
+        BufferPool pool   = new BufferPool(4096, 65536, 4, true);
+        ByteBuffer buffer = pool.acquire(4096);
+        pool.acquire(4096);
+        assertEquals(2, pool.getLeaks().size());
+        pool.release(buffer);
+        assertEquals(1, pool.getLeaks().size());
+        try {
+            pool.release(buffer);
+            fail("Released twice");
+        } catch (IllegalStateException e) {
+            assertEquals(1, pool.getLeaks().size());
+        }
+    }
+
+    public void testRejectsDoubleAndForeignReleases() {
+        BufferPool pool   = new BufferPool(4096, 65536, 4, false);
+        ByteBuffer buffer = pool.acquire(4096);
+        pool.release(buffer);
+        try {
+            pool.release(buffer);
+            fail("Released twice");
+        } catch (IllegalStateException e) {
+            assertEquals(0, pool.getOutstandingBytes());
+        }
+        try {
+            pool.release(ByteBuffer.allocateDirect(4096));
+            fail("Released buffer of another pool");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        try {
+            pool.release(ByteBuffer.allocate(4096));
+            fail("Released heap buffer");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertSame(buffer, pool.acquire(4096));
+        assertNotSame(buffer, pool.acquire(4096));
+    }
+}
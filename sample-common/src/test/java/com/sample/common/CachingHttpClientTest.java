@@ -0,0 +1,189 @@
+package com.sample.common;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stub server: /fresh is cacheable for a minute, /revalidate must be revalidated by ETag, /large is a cacheable body
+ * over memory threshold; each path answers after 100ms
+ */
+public class CachingHttpClientTest extends TestCase {
+    private final AtomicInteger upstream = new AtomicInteger();
+    private final byte[]        large    = new byte[256 * 1024];
+    private HttpServer          server;
+    private ExecutorService     executor;
+    private Path                folder;
+    private CachingHttpClient   client;
+
+    @Override
+    protected void setUp() throws IOException {
+        Arrays.fill(large, (byte) 'x');
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                upstream.incrementAndGet();
+                try {
+                    Thread.sleep(100L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                String path = exchange.getRequestURI().getPath();
+                byte[] body = path.equals("/large") ? large : path.getBytes("UTF-8");
+                exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                exchange.getResponseHeaders().set("Cache-Control", path.equals("/revalidate")
+                        ? "max-age=0, must-revalidate" : "max-age=60");
+                if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        folder = Files.createTempDirectory("http-cache");
+        client = HttpClientManager.createCachingHttpClient(HttpClientManager.createDefaultPool(null),
+                                                           HttpClientManager.createRequestConfig(), folder, 100,
+                                                           64 * 1024, 1024 * 1024);
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        client.close();
+        server.stop(0);
+        executor.shutdownNow();
+        for (File file : folder.toFile().listFiles()) {
+            file.delete();
+        }
+        Files.delete(folder);
+    }
+
+    private String get(String path) throws IOException {
+        try (CloseableHttpResponse response = client.execute(
+                new HttpGet("http://127.0.0.1:" + server.getAddress().getPort() + path))) {
+            return EntityUtils.toString(response.getEntity());
+        }
+    }
+
+    public void testHitsAndRevalidation() throws IOException {
+        assertEquals("/fresh", get("/fresh"));
+        assertEquals("/fresh", get("/fresh"));
+        assertEquals(1, upstream.get());
+        assertEquals(1, client.getHitCount());
+
+        assertEquals("/revalidate", get("/revalidate"));
+        assertEquals("/revalidate", get("/revalidate"));
+        assertEquals(3, upstream.get());
+        assertEquals(1, client.getValidatedCount());
+        assertEquals(0.5, client.getHitRatio(), 0.001);
+        assertEquals("/fresh".length() + "/revalidate".length(), client.getBytesSaved());
+    }
+
+    public void testLargeBodyOnDiskTier() throws IOException {
+        assertEquals(large.length, get("/large").length());
+        assertEquals(1, folder.toFile().listFiles().length);
+        assertEquals(large.length, get("/large").length());
+        assertEquals(1, upstream.get());
+        assertEquals(large.length, client.getBytesSaved());
+    }
+
+    public void testCoalescesConcurrentMisses() throws Exception {
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    return get("/fresh");
+                }
+            }));
+        }
+        for (Future<String> future : futures) {
+            assertEquals("/fresh", future.get());
+        }
+        assertEquals(1, upstream.get());
+        assertEquals(7, client.getHitCount());
+    }
+
+    public void testDiskTierStreamReadsWholeBodyAfterDispose() throws Exception {
+        TieredResourceFactory                    factory  = new TieredResourceFactory(folder, 1024);
+        TieredResourceFactory.MappedFileResource resource = (TieredResourceFactory.MappedFileResource) factory
+                .generate("large", new ByteArrayInputStream(large), null);
+        assertEquals(large.length, resource.length());
+        InputStream stream = resource.getInputStream();
+        assertEquals('x', stream.read());
+        resource.dispose();
+        if (IoUtil.IS_POSIX) {
+            assertFalse(Files.exists(resource.getFile()));
+        }
+        try {
+            resource.getInputStream();
+            fail("Disposed resource should not open streams");
+        } catch (IOException e) {
+            // Expected
+        }
+        byte[] rest = new byte[large.length];
+        int    read = 1;
+        for (int count; (count = stream.read(rest, read, rest.length - read)) > 0; ) {
+            read += count;
+        }
+        assertEquals(large.length, read);
+        rest[0] = 'x';
+        assertTrue(Arrays.equals(large, rest));
+        stream.close();
+        try {
+            stream.read();
+            fail("Closed stream should not read");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    public void testDiskTierResourceSerializable() throws Exception {
+        TieredResourceFactory factory = new TieredResourceFactory(folder, 1024);
+        Resource              resource = factory.generate("large", new ByteArrayInputStream(large), null);
+        ByteArrayOutputStream bytes    = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(resource);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Resource copy = (Resource) in.readObject();
+            assertEquals(large.length, copy.length());
+            try (InputStream stream = copy.getInputStream()) {
+                assertEquals(large.length, stream.available());
+            }
+            copy.dispose();
+        }
+    }
+}
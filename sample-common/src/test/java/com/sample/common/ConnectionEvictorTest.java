@@ -0,0 +1,99 @@
+package com.sample.common;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.http.HttpHost;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+public class ConnectionEvictorTest extends TestCase {
+    private HttpServer server;
+
+    @Override
+    protected void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, 2);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(new byte[]{'o', 'k'});
+                }
+            }
+        });
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() {
+        server.stop(0);
+    }
+
+    private PoolingHttpClientConnectionManager createPoolWithIdleConnection(long timeToLive) throws IOException {
+        PoolingHttpClientConnectionManager manager = HttpClientManager.createPool(null, 4, 2, true, true, 5000, -1,
+                                                                                  true, timeToLive, 100);
+        HttpClient client = HttpClientManager.createHttpClient(manager, HttpClientManager.createRequestConfig());
+        EntityUtils.consume(client.execute(new HttpGet("http://127.0.0.1:" + server.getAddress().getPort()))
+                                  .getEntity());
+        assertEquals(1, manager.getTotalStats().getAvailable());
+        return manager;
+    }
+
+    public void testEvictsIdleConnections() throws Exception {
+        PoolingHttpClientConnectionManager manager = createPoolWithIdleConnection(-1);
+        ConnectionEvictor evictor = new ConnectionEvictor(20L, 100L).register(manager).start();
+        try {
+            for (int i = 0; i < 100 && manager.getTotalStats().getAvailable() > 0; i++) {
+                Thread.sleep(20L);
+            }
+            assertEquals(0, manager.getTotalStats().getAvailable());
+        } finally {
+            evictor.close();
+        }
+    }
+
+    public void testEvictsExpiredConnectionsAndShutsDownPool() throws Exception {
+        PoolingHttpClientConnectionManager manager = createPoolWithIdleConnection(1000L);
+        ConnectionEvictor                  evictor = new ConnectionEvictor(60000L, 60000L).register(manager);
+        evictor.evict();
+        assertEquals(1, manager.getTotalStats().getAvailable());
+        Thread.sleep(1100L);
+        evictor.evict();
+        assertEquals(0, manager.getTotalStats().getAvailable());
+
+        evictor.close();
+        try {
+            manager.requestConnection(new HttpRoute(new HttpHost("127.0.0.1", server.getAddress().getPort())), null);
+            fail("Pool should be shut down with evictor");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    public void testCloseWhenInterruptedKeepsStatusAndShutsDownPool() throws Exception {
+        PoolingHttpClientConnectionManager manager = createPoolWithIdleConnection(-1);
+        ConnectionEvictor                  evictor = new ConnectionEvictor(60000L, 60000L).register(manager).start();
+        Thread.currentThread().interrupt();
+        try {
+            evictor.close();
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        try {
+            manager.requestConnection(new HttpRoute(new HttpHost("127.0.0.1", server.getAddress().getPort())), null);
+            fail("Pool should be shut down with evictor");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.sample.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Copies one large file by a single transferTo call (the former IoUtil.copy), the looping IoUtil.copy, and
+ * IoUtil.parallelCopy by segments, printing throughput of each. The file is created in the given folder (default temp
+ * folder) so the benchmark can run on the target disk; the target is deleted before each copy, and reads hit the page
+ * cache after the first round.
+ * <p>
+ * Run: mvn -pl sample-common test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.sample.common.CopyBenchmark [-Dexec.args="sizeMB segmentMB threads folder"]
+ */
+public class CopyBenchmark {
+    public static void main(String[] args) throws Exception {
+        long            size     = (args.length > 0 ? Long.parseLong(args[0]) : 1024L) << 20;
+        long            segment  = (args.length > 1 ? Long.parseLong(args[1]) : 64L) << 20;
+        int             threads  = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        Path            folder   = Paths.get(args.length > 3 ? args[3] : System.getProperty("java.io.tmpdir"));
+        Path            from     = Files.createTempFile(folder, "copy-benchmark", ".bin");
+        Path            to       = Files.createTempFile(folder, "copy-benchmark", ".bin");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            generate(from, size);
+            for (int round = 0; round < 3; round++) {
+                Files.delete(to);
+                long start = System.nanoTime();
+                long bytes = singleTransfer(from, to);
+                report("single transferTo", bytes, size, start);
+
+                Files.delete(to);
+                start = System.nanoTime();
+                IoUtil.copy(from, to);
+                report("IoUtil.copy", Files.size(to), size, start);
+
+                Files.delete(to);
+                start = System.nanoTime();
+                IoUtil.parallelCopy(from, to, executor, segment, IoUtil.SyncPolicy.NONE);
+                report("IoUtil.parallelCopy x" + threads, Files.size(to), size, start);
+            }
+        } finally {
+            executor.shutdown();
+            Files.deleteIfExists(from);
+            Files.deleteIfExists(to);
+        }
+    }
+
+    private static void generate(Path file, long size) throws IOException {
+        byte[] chunk = new byte[1 << 20];
+        new Random(1).nextBytes(chunk);
+        try (FileChannel channel = FileChannel.open(file, IoUtil.OVERWRITE_OPTIONS)) {
+            for (long written = 0L; written < size; ) {
+                ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, (int) Math.min(chunk.length, size - written));
+                while (buffer.hasRemaining()) {
+                    written += channel.write(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * The copy before the transfer loop: one call, return value ignored
+     */
+    private static long singleTransfer(Path from, Path to) throws IOException {
+        try (FileChannel fromChannel = FileChannel.open(from, IoUtil.READ_OPTIONS);
+             FileChannel toChannel = FileChannel.open(to, IoUtil.OVERWRITE_OPTIONS)
+        ) {
+            fromChannel.transferTo(0L, fromChannel.size(), toChannel);
+            return toChannel.size();
+        }
+    }
+
+    private static void report(String name, long copied, long size, long start) {
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-26s %6d ms %8.1f MB/s%s%n", name, elapsed / 1000000, copied * 1e9 / elapsed / (1 << 20),
+                          copied == size ? "" : " (truncated to " + copied + " of " + size + " bytes)");
+    }
+}
@@ -0,0 +1,141 @@
+package com.sample.common;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class DirectorySyncTest extends TestCase {
+    private Path from;
+    private Path to;
+
+    @Override
+    protected void setUp() throws IOException {
+        from = Files.createTempDirectory("sync-from");
+        to = Files.createTempDirectory("sync-to");
+        for (int i = 0; i < 20; i++) {
+            Path dir = Files.createDirectories(from.resolve("d" + i % 4).resolve("e" + i % 2));
+            byte[] data = new byte[i * 10000];
+            Arrays.fill(data, (byte) i);
+            Files.write(dir.resolve("f" + i), data);
+        }
+        Files.createDirectories(from.resolve("empty"));
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        delete(from);
+        delete(to);
+    }
+
+    private static void delete(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    public void testIncrementalSync() throws IOException {
+        DirectorySync        sync   = new DirectorySync(new ForkJoinPool(4), 2, false, false);
+        DirectorySync.Result result = sync.sync(from, to);
+        assertEquals(20, result.files);
+        assertEquals(20, result.copied);
+        assertEquals(190 * 10000, result.bytes);
+        assertTrue(Files.isDirectory(to.resolve("empty")));
+        assertTrue(Arrays.equals(Files.readAllBytes(from.resolve("d3/e1/f7")),
+                                 Files.readAllBytes(to.resolve("d3/e1/f7"))));
+
+        result = sync.sync(from, to);
+        assertEquals(0, result.copied);
+        assertEquals(20, result.skipped);
+
+        Files.write(from.resolve("d1/e1/f5"), new byte[50000]);
+        result = sync.sync(from, to);
+        assertEquals(1, result.copied);
+        assertEquals(50000, result.bytes);
+        assertTrue(Arrays.equals(new byte[50000], Files.readAllBytes(to.resolve("d1/e1/f5"))));
+    }
+
+    public void testChecksumSkipsTouchedFiles() throws IOException {
+        DirectorySync sync = new DirectorySync(null, 4, false, true);
+        sync.sync(from, to);
+        FileTime time = FileTime.fromMillis(Files.getLastModifiedTime(from.resolve("d2/e0/f2")).toMillis() + 60000);
+        Files.setLastModifiedTime(from.resolve("d2/e0/f2"), time);
+        Files.setLastModifiedTime(from.resolve("d3/e1/f3"), time);
+        byte[] changed = Files.readAllBytes(from.resolve("d3/e1/f3"));
+        changed[changed.length - 1]++;
+        Files.write(from.resolve("d3/e1/f3"), changed);
+        Files.setLastModifiedTime(from.resolve("d3/e1/f3"), time);
+
+        DirectorySync.Result result = sync.sync(from, to);
+        assertEquals(1, result.copied);
+        assertEquals(time, Files.getLastModifiedTime(to.resolve("d2/e0/f2")));
+        assertTrue(Arrays.equals(changed, Files.readAllBytes(to.resolve("d3/e1/f3"))));
+    }
+
+    public void testSymbolicLinksLeftOut() throws IOException {
+        Files.createSymbolicLink(from.resolve("d0/link"), from.resolve("d1/e1/f1"));
+        DirectorySync.Result result = new DirectorySync().sync(from, to);
+        assertEquals(20, result.files);
+        assertEquals(1, result.others);
+        assertFalse(Files.exists(to.resolve("d0/link"), LinkOption.NOFOLLOW_LINKS));
+    }
+
+    public void testSecureSyncCreatesOwnerOnlyDirectories() throws IOException {
+        new DirectorySync(null, 2, true, false).sync(from, to);
+        assertTrue(Arrays.equals(Files.readAllBytes(from.resolve("d2/e0/f6")),
+                                 Files.readAllBytes(to.resolve("d2/e0/f6"))));
+        if (IoUtil.IS_POSIX) {
+            for (String dir : new String[]{"d2", "d2/e0", "empty"}) {
+                assertEquals(PosixFilePermissions.fromString("rwx------"),
+                             Files.getPosixFilePermissions(to.resolve(dir)));
+            }
+        }
+    }
+
+    public void testRejectedCopyFailsSync() throws Exception {
+        final ForkJoinPool pool   = new ForkJoinPool(2);
+        ExecutorService    caller = Executors.newSingleThreadExecutor();
+        pool.shutdown();
+        try {
+            Future<DirectorySync.Result> result = caller.submit(new Callable<DirectorySync.Result>() {
+                @Override
+                public DirectorySync.Result call() throws IOException {
+                    return new DirectorySync(pool, 1, false, false).sync(from, to);
+                }
+            });
+            result.get(10L, TimeUnit.SECONDS);
+            fail("Sync on a shut down pool should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertTrue(e.getCause().getCause() instanceof RejectedExecutionException);
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+}
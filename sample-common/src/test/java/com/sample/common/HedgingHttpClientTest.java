@@ -0,0 +1,110 @@
+package com.sample.common;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stub server injecting latency: the n-th request to /slow?n sleeps 1s, other requests answer at once
+ */
+public class HedgingHttpClientTest extends TestCase {
+    private final AtomicInteger                requests = new AtomicInteger();
+    private HttpServer                         server;
+    private ExecutorService                    executor;
+    private PoolingHttpClientConnectionManager manager;
+
+    @Override
+    protected void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int    sequence = requests.incrementAndGet();
+                String query    = exchange.getRequestURI().getQuery();
+                if (query != null && Integer.parseInt(query) == sequence) {
+                    try {
+                        Thread.sleep(1000L);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                exchange.sendResponseHeaders(200, 2);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(new byte[]{'o', 'k'});
+                } catch (IOException e) {
+                    // Client aborted the losing attempt
+                }
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        manager = HttpClientManager.createDefaultPool(null);
+    }
+
+    @Override
+    protected void tearDown() {
+        manager.shutdown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private HedgingHttpClient createClient(RetryBudget budget) {
+        RequestConfig config = HttpClientManager.createRequestConfig();
+        return new HedgingHttpClient(HttpClientManager.createHttpClient(manager, config), config, executor, budget,
+                                     50L, 3);
+    }
+
+    private String url(String query) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/slow" + (query == null ? "" : "?" + query);
+    }
+
+    public void testHedgedRequestWins() throws IOException {
+        HedgingHttpClient client   = createClient(new RetryBudget(0.1, 5));
+        long              start    = System.nanoTime();
+        HttpResponse      response = client.execute(new HttpGet(url("1")), 5000L);
+        assertEquals("ok", EntityUtils.toString(response.getEntity()));
+        assertTrue(System.nanoTime() - start < 800_000_000L);
+        assertEquals(1, client.getHedgeCount());
+        assertEquals(1, client.getHedgeWinCount());
+    }
+
+    public void testDeadlineBoundsSlowCall() throws IOException {
+        HedgingHttpClient client = createClient(new RetryBudget(0.1, 0));  // No budget for hedge
+        long              start  = System.nanoTime();
+        try {
+            client.execute(new HttpGet(url("1")), 200L);
+            fail("Deadline should be exceeded");
+        } catch (SocketTimeoutException e) {
+            // Expected
+        }
+        assertTrue(System.nanoTime() - start < 800_000_000L);
+        assertEquals(0, client.getHedgeCount());
+        assertEquals(1, client.getDeadlineExceededCount());
+    }
+
+    public void testRetryBudget() {
+        RetryBudget budget = new RetryBudget(0.1, 1);
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+        for (int i = 0; i < 10; i++) {
+            budget.deposit();
+        }
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+    }
+}
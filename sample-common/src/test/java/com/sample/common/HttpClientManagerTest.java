@@ -0,0 +1,158 @@
+package com.sample.common;
+
+import junit.framework.TestCase;
+import org.apache.http.ssl.SSLContexts;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class HttpClientManagerTest extends TestCase {
+    private static final String PASSWORD = "secret";
+
+    private static void writeStore(File file, String password) throws GeneralSecurityException, IOException {
+        KeyStore store = KeyStore.getInstance("PKCS12");
+        store.load(null, null);
+        try (OutputStream out = new FileOutputStream(file)) {
+            store.store(out, password.toCharArray());
+        }
+    }
+
+    /**
+     * Self signed certificate by keytool of current JDK
+     */
+    private static void generateStore(File store, String commonName) throws IOException, InterruptedException {
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", commonName, "-keyalg", "RSA",
+                                             "-keysize", "2048", "-validity", "1", "-dname", "CN=" + commonName,
+                                             "-ext", "san=dns:" + commonName, "-storetype", "PKCS12",
+                                             "-keystore", store.getPath(), "-storepass", PASSWORD,
+                                             "-keypass", PASSWORD).inheritIO().start();
+        assertEquals(0, process.waitFor());
+    }
+
+    public void testContextCachedUntilStoreChanged() throws Exception {
+        File file = File.createTempFile("trust", ".p12");
+        try {
+            writeStore(file, "secret");
+            SSLContext first = HttpClientManager.createContext4Cer("PKCS12", file.getPath(), "secret");
+            assertSame(first, HttpClientManager.createContext4Cer("PKCS12", file.getPath(), "secret"));
+            assertEquals(HttpClientManager.SSL_SESSION_CACHE_SIZE,
+                         first.getClientSessionContext().getSessionCacheSize());
+
+            writeStore(file, "secret");
+            assertTrue(file.setLastModified(file.lastModified() + 2000L));
+            SSLContext reloaded = HttpClientManager.createContext4Cer("PKCS12", file.getPath(), "secret");
+            assertNotSame(first, reloaded);
+            assertSame(reloaded, HttpClientManager.createContext4Cer("PKCS12", file.getPath(), "secret"));
+        } finally {
+            HttpClientManager.clearContextCache();
+            assertTrue(file.delete());
+        }
+    }
+
+    public void testContextCacheKeyedByPassword() throws Exception {
+        File file = File.createTempFile("trust", ".p12");
+        try {
+            assertEquals("Aa".hashCode(), "BB".hashCode());
+            writeStore(file, "Aa");
+            assertNotNull(HttpClientManager.createContext4Cer("PKCS12", file.getPath(), "Aa"));
+            try {
+                HttpClientManager.createContext4Cer("PKCS12", file.getPath(), "BB");
+                fail("Password of the same hash should not get the cached context");
+            } catch (IOException e) {
+                // expected, wrong password
+            }
+        } finally {
+            HttpClientManager.clearContextCache();
+            assertTrue(file.delete());
+        }
+    }
+
+    public void testSystemContextPresentsClientCertificateOfKeyStoreProperty() throws Exception {
+        File serverStore = File.createTempFile("server", ".p12");
+        File clientStore = File.createTempFile("client", ".p12");
+        assertTrue(serverStore.delete() && clientStore.delete());
+        String[]        properties = {"javax.net.ssl.keyStore", "javax.net.ssl.keyStoreType",
+                                      "javax.net.ssl.keyStorePassword", "javax.net.ssl.trustStore",
+                                      "javax.net.ssl.trustStoreType", "javax.net.ssl.trustStorePassword"};
+        String[]        saved      = new String[properties.length];
+        ExecutorService executor   = Executors.newSingleThreadExecutor();
+        for (int i = 0; i < properties.length; i++) {
+            saved[i] = System.getProperty(properties[i]);
+        }
+        try {
+            generateStore(serverStore, "localhost");
+            generateStore(clientStore, "client");
+            System.setProperty("javax.net.ssl.keyStore", clientStore.getPath());
+            System.setProperty("javax.net.ssl.keyStoreType", "PKCS12");
+            System.setProperty("javax.net.ssl.keyStorePassword", PASSWORD);
+            System.setProperty("javax.net.ssl.trustStore", serverStore.getPath());
+            System.setProperty("javax.net.ssl.trustStoreType", "PKCS12");
+            System.setProperty("javax.net.ssl.trustStorePassword", PASSWORD);
+            HttpClientManager.clearContextCache();
+
+            SSLContext serverContext = SSLContexts.custom()
+                                                  .loadKeyMaterial(serverStore, PASSWORD.toCharArray(),
+                                                                   PASSWORD.toCharArray())
+                                                  .loadTrustMaterial(clientStore, PASSWORD.toCharArray())
+                                                  .build();
+            try (SSLServerSocket server = (SSLServerSocket) serverContext.getServerSocketFactory()
+                                                                         .createServerSocket(0)) {
+                server.setNeedClientAuth(true);
+                Future<String> peer = executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        try (SSLSocket socket = (SSLSocket) server.accept()) {
+                            socket.startHandshake();
+                            X509Certificate certificate = (X509Certificate) socket.getSession()
+                                                                                  .getPeerCertificates()[0];
+                            socket.getOutputStream().write(1);
+                            return certificate.getSubjectX500Principal().getName();
+                        }
+                    }
+                });
+                try (SSLSocket socket = (SSLSocket) HttpClientManager.createSystemContext().getSocketFactory()
+                                                                     .createSocket("localhost",
+                                                                                   server.getLocalPort())) {
+                    assertEquals(1, socket.getInputStream().read());
+                }
+                assertEquals("CN=client", peer.get(10L, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+            for (int i = 0; i < properties.length; i++) {
+                if (saved[i] == null) {
+                    System.clearProperty(properties[i]);
+                } else {
+                    System.setProperty(properties[i], saved[i]);
+                }
+            }
+            HttpClientManager.clearContextCache();
+            serverStore.delete();
+            clientStore.delete();
+        }
+    }
+
+    public void testSystemContextLeavesJvmDefaultAlone() throws Exception {
+        SSLContext jvmDefault = SSLContext.getDefault();
+        int        cacheSize  = jvmDefault.getClientSessionContext().getSessionCacheSize();
+        SSLContext system     = HttpClientManager.createSystemContext();
+        assertNotSame(jvmDefault, system);
+        assertSame(system, HttpClientManager.createSystemContext());
+        assertEquals(HttpClientManager.SSL_SESSION_CACHE_SIZE, system.getClientSessionContext().getSessionCacheSize());
+        assertEquals(cacheSize, jvmDefault.getClientSessionContext().getSessionCacheSize());
+    }
+}
@@ -0,0 +1,154 @@
+package com.sample.common;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Stub server answering Range requests of form bytes=n-, honoring If-Range against its ETag
+ */
+public class HttpDownloaderTest extends TestCase {
+    private final    byte[]                             payload = new byte[3 * 1024 * 1024 + 17];
+    private volatile String                             etag    = "\"v1\"";
+    /**
+     * Added to the first byte position reported by Content-Range, to fake a server answering another range
+     */
+    private volatile int                                rangeShift;
+    private          HttpServer                         server;
+    private          PoolingHttpClientConnectionManager manager;
+    private          Path                               file;
+
+    @Override
+    protected void setUp() throws IOException {
+        new Random(7).nextBytes(payload);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String range   = exchange.getRequestHeaders().getFirst("Range");
+                String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+                if (ifRange != null && !ifRange.equals(etag)) {
+                    range = null;
+                }
+                int from = range == null ? 0 : Integer.parseInt(range.substring(6, range.length() - 1));
+                exchange.getResponseHeaders().set("ETag", etag);
+                if (from >= payload.length) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes */" + payload.length);
+                    exchange.sendResponseHeaders(416, -1);
+                    exchange.close();
+                    return;
+                }
+                if (range != null) {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes " + (from + rangeShift) + "-"
+                                                                       + (payload.length - 1) + "/" + payload.length);
+                }
+                exchange.sendResponseHeaders(range == null ? 200 : 206, payload.length - from);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(payload, from, payload.length - from);
+                }
+            }
+        });
+        server.start();
+        manager = HttpClientManager.createDefaultPool(null);
+        file = Files.createTempFile("download", ".bin");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        manager.shutdown();
+        server.stop(0);
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(HttpDownloader.validatorFile(file));
+    }
+
+    private HttpDownloader createDownloader() {
+        return new HttpDownloader(HttpClientManager.createHttpClient(manager, HttpClientManager.createRequestConfig()));
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/payload";
+    }
+
+    public void testDownloadAndResume() throws IOException {
+        HttpDownloader        downloader = createDownloader();
+        HttpDownloader.Result result     = downloader.download(url(), file);
+        assertEquals(payload.length, result.bytes);
+        assertTrue(Arrays.equals(payload, Files.readAllBytes(file)));
+
+        Files.write(file, Arrays.copyOf(payload, 1000000));
+        result = downloader.resume(url(), file);
+        assertEquals(1000000, result.offset);
+        assertEquals(payload.length - 1000000, result.bytes);
+        assertTrue(result.getBytesPerSecond() > 0);
+        assertTrue(Arrays.equals(payload, Files.readAllBytes(file)));
+
+        result = downloader.resume(url(), file);
+        assertTrue(result.complete);
+        assertEquals(0, result.bytes);
+    }
+
+    public void testResumeOfChangedResourceStartsOver() throws IOException {
+        HttpDownloader downloader = createDownloader();
+        downloader.download(url(), file);
+        assertEquals(etag, new String(Files.readAllBytes(HttpDownloader.validatorFile(file)), "UTF-8"));
+
+        Files.write(file, Arrays.copyOf(payload, 1000000));
+        new Random(8).nextBytes(payload);
+        etag = "\"v2\"";
+        HttpDownloader.Result result = downloader.resume(url(), file);
+        assertEquals(0, result.offset);
+        assertEquals(payload.length, result.bytes);
+        assertTrue(Arrays.equals(payload, Files.readAllBytes(file)));
+        assertEquals(etag, new String(Files.readAllBytes(HttpDownloader.validatorFile(file)), "UTF-8"));
+    }
+
+    public void testResumeWithoutValidatorStartsOver() throws IOException {
+        Files.write(file, new byte[1000]);
+        HttpDownloader.Result result = createDownloader().resume(url(), file);
+        assertEquals(0, result.offset);
+        assertTrue(Arrays.equals(payload, Files.readAllBytes(file)));
+    }
+
+    public void testMismatchedContentRangeStartsOver() throws IOException {
+        HttpDownloader downloader = createDownloader();
+        downloader.download(url(), file);
+        Files.write(file, Arrays.copyOf(payload, 1000000));
+        rangeShift = 1;
+        HttpDownloader.Result result = downloader.resume(url(), file);
+        assertEquals(0, result.offset);
+        assertEquals(payload.length, result.bytes);
+        assertTrue(Arrays.equals(payload, Files.readAllBytes(file)));
+    }
+
+    public void testUnsatisfiableRangeOfLongerFileStartsOver() throws IOException {
+        HttpDownloader downloader = createDownloader();
+        downloader.download(url(), file);
+        Files.write(file, Arrays.copyOf(payload, payload.length + 10));
+        HttpDownloader.Result result = downloader.resume(url(), file);
+        assertFalse(result.complete);
+        assertEquals(payload.length, result.bytes);
+        assertTrue(Arrays.equals(payload, Files.readAllBytes(file)));
+    }
+
+    public void testParseContentRange() {
+        assertTrue(Arrays.equals(new long[]{5L, 9L, 10L},
+                                 HttpDownloader.parseContentRange(new BasicHeader("Content-Range", "bytes 5-9/10"))));
+        assertTrue(Arrays.equals(new long[]{5L, 9L, -1L},
+                                 HttpDownloader.parseContentRange(new BasicHeader("Content-Range", "bytes 5-9/*"))));
+        assertTrue(Arrays.equals(new long[]{-1L, -1L, 10L},
+                                 HttpDownloader.parseContentRange(new BasicHeader("Content-Range", "bytes */10"))));
+        assertNull(HttpDownloader.parseContentRange(new BasicHeader("Content-Range", "items 5-9/10")));
+        assertNull(HttpDownloader.parseContentRange(null));
+    }
+}
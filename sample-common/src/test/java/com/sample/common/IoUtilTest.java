@@ -0,0 +1,206 @@
+package com.sample.common;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IoUtilTest extends TestCase {
+    private final byte[] data = new byte[5 * 1024 * 1024 + 3];
+    private Path         from;
+    private Path         to;
+
+    @Override
+    protected void setUp() throws IOException {
+        new Random(11).nextBytes(data);
+        from = Files.createTempFile("copy-from", ".bin");
+        to = Files.createTempFile("copy-to", ".bin");
+        Files.write(from, data);
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        Files.deleteIfExists(from);
+        Files.deleteIfExists(to);
+    }
+
+    public void testCopy() throws IOException {
+        Files.write(to, new byte[data.length * 2]);
+        IoUtil.copy(from, to);
+        assertTrue(Arrays.equals(data, Files.readAllBytes(to)));
+    }
+
+    public void testParallelCopy() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Files.write(to, new byte[data.length * 2]);
+            IoUtil.parallelCopy(from, to, executor, 1024 * 1024, IoUtil.SyncPolicy.DATA);
+            assertTrue(Arrays.equals(data, Files.readAllBytes(to)));
+
+            IoUtil.parallelCopy(from, to, executor, data.length, IoUtil.SyncPolicy.NONE);
+            assertTrue(Arrays.equals(data, Files.readAllBytes(to)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testTransferFallsBackWhenTransferToStalls() throws IOException {
+        try (FileChannel source = new StalledChannel(FileChannel.open(from, IoUtil.READ_OPTIONS));
+             FileChannel target = FileChannel.open(to, IoUtil.OVERWRITE_OPTIONS)
+        ) {
+            IoUtil.transfer(source, 0L, data.length, target);
+        }
+        assertTrue(Arrays.equals(data, Files.readAllBytes(to)));
+    }
+
+    public void testParallelCopyFailureWaitsForRunningSegments() throws Exception {
+        final AtomicInteger running  = new AtomicInteger();
+        final AtomicInteger started  = new AtomicInteger();
+        ExecutorService     executor = new ThreadPoolExecutor(4, 4, 0L, TimeUnit.MILLISECONDS,
+                                                              new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            protected <T> RunnableFuture<T> newTaskFor(final Callable<T> callable) {
+                return super.newTaskFor(new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        if (started.getAndIncrement() == 0) {
+                            throw new IOException("First segment failed");
+                        }
+                        running.incrementAndGet();
+                        try {
+                            T result = callable.call();
+                            Thread.sleep(300L);
+                            return result;
+                        } finally {
+                            running.decrementAndGet();
+                        }
+                    }
+                });
+            }
+        };
+        try {
+            IoUtil.parallelCopy(from, to, executor, 1024 * 1024, IoUtil.SyncPolicy.NONE);
+            fail("Copy should fail with its first segment");
+        } catch (IOException e) {
+            assertEquals("First segment failed", e.getMessage());
+            assertEquals(0, running.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Channel whose transferTo moves nothing, other reads go to the real channel
+     */
+    private static class StalledChannel extends FileChannel {
+        private final FileChannel channel;
+
+        StalledChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) {
+            return 0L;
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public FileChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            channel.force(metaData);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+}
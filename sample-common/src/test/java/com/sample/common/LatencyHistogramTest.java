@@ -0,0 +1,28 @@
+package com.sample.common;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+    public void testBucketsCoverValues() {
+        long[] values = {0L, 1L, 15L, 16L, 17L, 31L, 32L, 1000L, 123456789L, Long.MAX_VALUE};
+        for (long value : values) {
+            long upper = LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(value));
+            assertTrue(upper >= value);
+            assertTrue(upper - value <= value / 16);
+        }
+    }
+
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        long p50 = histogram.getValueAtPercentile(50.0);
+        long p99 = histogram.getValueAtPercentile(99.0);
+        assertTrue(p50 >= 500 && p50 <= 500 + 500 / 16);
+        assertTrue(p99 >= 990 && p99 <= 990 + 990 / 16);
+    }
+}
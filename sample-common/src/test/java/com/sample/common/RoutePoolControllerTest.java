@@ -0,0 +1,82 @@
+package com.sample.common;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+public class RoutePoolControllerTest extends TestCase {
+    private final PoolingHttpClientConnectionManager manager = HttpClientManager.createDefaultPool(null);
+    private final HttpRoute                          route   = new HttpRoute(new HttpHost("backend", 80));
+
+    private void interval(RoutePoolController controller, long micros, int errors, boolean saturated) {
+        RoutePoolController.RouteState state = controller.stateOf(route);
+        for (int i = 0; i < 100; i++) {
+            controller.recordExchange(state, micros, i < errors);
+        }
+        state.peakInFlight.set(saturated ? manager.getMaxPerRoute(route) : 0);
+        controller.adjust();
+    }
+
+    public void testLimitFollowsLatencyAndErrors() {
+        RoutePoolController controller = new RoutePoolController(manager, 2, 32, 1000L);
+        interval(controller, 1000L, 0, true);
+        assertEquals(9, manager.getMaxPerRoute(route));  // Saturated with flat latency, probe upward
+        interval(controller, 1000L, 0, false);
+        assertEquals(9, manager.getMaxPerRoute(route));  // Not saturated, keep
+        interval(controller, 5000L, 0, true);
+        assertTrue(manager.getMaxPerRoute(route) < 9);   // Latency jumped
+        int limit = manager.getMaxPerRoute(route);
+        interval(controller, 1000L, 50, true);
+        assertTrue(manager.getMaxPerRoute(route) < limit); // Failing backend
+
+        RoutePoolController.RouteStats stats = controller.getRouteStats(route);
+        assertEquals(400, stats.requests);
+        assertEquals(50, stats.errors);
+        assertEquals(manager.getMaxPerRoute(route), stats.limit);
+    }
+
+    public void testMeasuresRequestsOfClient() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(exchange.getRequestURI().getPath().startsWith("/fail") ? 503 : 200,
+                                             body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.start();
+        try (RoutePoolController controller = new RoutePoolController(manager, 2, 32, 1000L)) {
+            HttpClient client = HttpClientManager.createHttpClient(controller, HttpClientManager.createRequestConfig());
+            String     url    = "http://127.0.0.1:" + server.getAddress().getPort();
+            for (String path : new String[]{"/a", "/b", "/fail"}) {
+                HttpResponse response = client.execute(new HttpGet(url + path));
+                EntityUtils.consume(response.getEntity());
+            }
+            RoutePoolController.RouteStats stats = controller.getRouteStats().values().iterator().next();
+            assertEquals(3, stats.requests);
+            assertEquals(1, stats.errors);
+            assertEquals(0, stats.leased);
+            assertTrue(stats.latencyP99Micros > 0);
+        } finally {
+            server.stop(0);
+            manager.shutdown();
+        }
+    }
+}
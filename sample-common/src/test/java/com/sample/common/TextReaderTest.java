@@ -0,0 +1,73 @@
+package com.sample.common;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Text of multi-byte chars and mixed line terminators, larger than a chunk so chars and \r\n cross chunk boundaries
+ */
+public class TextReaderTest extends TestCase {
+    private final List<String> lines = new ArrayList<>();
+    private String             text;
+    private Path               file;
+
+    @Override
+    protected void setUp() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        String[]      ends    = {"\n", "\r\n", "\r"};
+        for (int i = 0; builder.length() < 3 * TextReader.CHUNK_SIZE; i++) {
+            String line = i % 7 == 0 ? "" : "第" + i + "行 line " + i;
+            lines.add(line);
+            builder.append(line).append(line.isEmpty() ? "\r\n" : ends[i % 3]);
+        }
+        lines.add("last");
+        text = builder.append("last").toString();
+        file = Files.createTempFile("text", ".txt");
+        IoUtil.writeText(file, text, "UTF-8");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private List<String> readLines(TextReader reader) throws IOException {
+        List<String> result = new ArrayList<>();
+        try {
+            for (String line : reader) {
+                result.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    public void testReadText() throws IOException {
+        assertEquals(text, IoUtil.readText(file, "UTF-8"));
+    }
+
+    public void testLinesByChunks() throws IOException {
+        assertEquals(lines, readLines(IoUtil.openText(file, "UTF-8")));
+        assertEquals(lines, readLines(IoUtil.openText(file, "UTF-8")));
+    }
+
+    public void testLinesByMapping() throws IOException {
+        assertEquals(lines, readLines(IoUtil.mapText(file, "UTF-8")));
+    }
+
+    public void testEmptyAndTrailingTerminator() throws IOException {
+        IoUtil.writeText(file, "", "UTF-8");
+        assertNull(IoUtil.openText(file, "UTF-8").nextLine());
+        IoUtil.writeText(file, "a\r\n", "UTF-8");
+        try (TextReader reader = IoUtil.mapText(file, "UTF-8")) {
+            assertEquals("a", reader.nextLine());
+            assertNull(reader.nextLine());
+        }
+    }
+}
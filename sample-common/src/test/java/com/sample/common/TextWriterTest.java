@@ -0,0 +1,58 @@
+package com.sample.common;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class TextWriterTest extends TestCase {
+    private Path file;
+
+    @Override
+    protected void setUp() throws IOException {
+        file = Files.createTempFile("text", ".txt");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * More than all buffers of a gathering write, with surrogate pairs split between writes
+     */
+    public void testWriterSink() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        String        emoji    = "😀";
+        try (TextWriter writer = IoUtil.openWriter(file, "UTF-8")) {
+            for (int i = 0; expected.length() < 5 * TextWriter.BUFFER_SIZE; i++) {
+                String line = "行 " + i + " ";
+                writer.append(line).write(emoji.charAt(0));
+                writer.write(emoji.charAt(1));
+                writer.write('\n');
+                expected.append(line).append(emoji).append('\n');
+            }
+            writer.write(emoji, 0, 1);
+            writer.flush();
+            writer.write(emoji, 1, 1);
+            expected.append(emoji);
+        }
+        assertEquals(expected.toString(), IoUtil.readText(file, "UTF-8"));
+    }
+
+    public void testWriteTextAndSegments() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("段落").append(i);
+        }
+        IoUtil.writeText(file, text, "GBK");
+        assertEquals(text.toString(), IoUtil.readText(file, "GBK"));
+
+        IoUtil.writeSegments(file, "UTF-8", "head,", text, ",tail");
+        assertEquals("head," + text + ",tail", IoUtil.readText(file, "UTF-8"));
+
+        IoUtil.writeText(file, "", "UTF-8");
+        assertEquals(0, Files.size(file));
+    }
+}
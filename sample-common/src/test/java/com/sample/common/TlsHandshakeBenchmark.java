@@ -0,0 +1,129 @@
+package com.sample.common;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsExchange;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short-lived clients (one pool per client, as per-tenant clients) against a local TLS server, comparing a new SSL
+ * context per client with the cached context of HttpClientManager. Full handshakes are counted by distinct sessions
+ * seen by server (TLSv1.2, where resumed sessions keep their id).
+ * <p>
+ * Run: mvn -pl sample-common test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.sample.common.TlsHandshakeBenchmark [-Dexec.args=clients]
+ */
+public class TlsHandshakeBenchmark {
+    private static final String PASSWORD = "benchmark";
+
+    public static void main(String[] args) throws Exception {
+        int  clients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        File store   = File.createTempFile("tls-benchmark", ".p12");
+        assertTrue(store.delete());
+        try {
+            generateStore(store);
+            final Set<String> sessions = ConcurrentHashMap.newKeySet();
+            HttpsServer       server   = startServer(store, sessions);
+            String            url      = "https://localhost:" + server.getAddress().getPort() + "/";
+            try {
+                run("warm up", clients / 4, store, url, sessions, true);
+                run("new context per client", clients, store, url, sessions, false);
+                run("cached context", clients, store, url, sessions, true);
+            } finally {
+                server.stop(0);
+            }
+        } finally {
+            HttpClientManager.clearContextCache();
+            store.delete();
+        }
+    }
+
+    private static void run(String name, int clients, File store, String url, Set<String> sessions,
+            boolean cached) throws Exception {
+        sessions.clear();
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            Registry<ConnectionSocketFactory> registry = cached
+                    ? HttpClientManager.createRegistry4Cer("PKCS12", store.getPath(), PASSWORD)
+                    : RegistryBuilder.<ConnectionSocketFactory>create()
+                                     .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                                     .register("https", new SSLConnectionSocketFactory(
+                                             HttpClientManager.buildContext4Cer("PKCS12", store.getPath(), PASSWORD)))
+                                     .build();
+            PoolingHttpClientConnectionManager manager = HttpClientManager.createDefaultPool(registry);
+            try {
+                HttpClient client = HttpClientManager.createHttpClient(manager,
+                                                                       HttpClientManager.createRequestConfig());
+                EntityUtils.consume(client.execute(new HttpGet(url)).getEntity());
+            } finally {
+                manager.shutdown();
+            }
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        System.out.printf("%-24s clients %5d, full handshakes %5d, %8.1f us/client%n", name, clients,
+                          sessions.size(), (double) micros / clients);
+    }
+
+    private static HttpsServer startServer(File store, final Set<String> sessions) throws Exception {
+        HttpsServer server = HttpsServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(
+                SSLContexts.custom().loadKeyMaterial(store, PASSWORD.toCharArray(), PASSWORD.toCharArray()).build()) {
+            @Override
+            public void configure(HttpsParameters params) {
+                params.setProtocols(new String[]{"TLSv1.2"});
+            }
+        });
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                sessions.add(new BigInteger(1, ((HttpsExchange) exchange).getSSLSession().getId()).toString(16));
+                exchange.sendResponseHeaders(200, 2);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(new byte[]{'o', 'k'});
+                }
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    /**
+     * Self signed certificate for localhost by keytool of current JDK
+     */
+    private static void generateStore(File store) throws IOException, InterruptedException {
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "server", "-keyalg", "RSA",
+                                             "-keysize", "2048", "-validity", "1", "-dname", "CN=localhost",
+                                             "-ext", "san=dns:localhost", "-storetype", "PKCS12",
+                                             "-keystore", store.getPath(), "-storepass", PASSWORD,
+                                             "-keypass", PASSWORD).inheritIO().start();
+        assertTrue(process.waitFor() == 0);
+    }
+
+    private static void assertTrue(boolean condition) {
+        if (!condition) {
+            throw new IllegalStateException("Benchmark setup failed");
+        }
+    }
+}
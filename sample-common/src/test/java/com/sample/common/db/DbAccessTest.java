@@ -0,0 +1,354 @@
+package com.sample.common.db;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.sample.common.json.JsonStreamer;
+import junit.framework.TestCase;
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * DbAccess against H2 in-memory database
+ */
+public class DbAccessTest extends TestCase {
+    private static int sequence;
+
+    private String         url;
+    private JdbcDataSource dataSource;
+    private ItemAccess     access;
+
+    static class Item implements Incremental {
+        int        id;
+        String     name;
+        List<Item> children = new ArrayList<>();
+
+        Item(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+    }
+
+    static class ItemAccess extends DbAccess<Item> {
+        @Override
+        public Item newInstance() {
+            return new Item(null);
+        }
+
+        @Override
+        public PreparedStatement statement4Insert(Connection connection) {
+            try {
+                if (!isIdGeneratedByDatabase()) {
+                    return connection.prepareStatement("insert into item(parent_id, name, id) values(?, ?, ?)");
+                }
+                return connection.prepareStatement("insert into item(parent_id, name) values(?, ?)",
+                                                   Statement.RETURN_GENERATED_KEYS);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void setInsertData(PreparedStatement stmt, Item instance, int parentId) {
+            try {
+                stmt.setInt(1, parentId);
+                stmt.setString(2, instance.name);
+                if (!isIdGeneratedByDatabase()) {
+                    stmt.setInt(3, instance.id);
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        void insertChildren(Connection connection, Item instance) {
+        }
+
+        @Override
+        public void getSelectData(ResultSet resultSet, Item instance) throws SQLException {
+            instance.id = resultSet.getInt(1);
+            instance.name = resultSet.getString(2);
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        dataSource = new JdbcDataSource();
+        url = "jdbc:h2:mem:dbAccess" + (sequence++) + ";DB_CLOSE_DELAY=-1";
+        dataSource.setURL(url);
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("create table item(id int auto_increment primary key, parent_id int, name varchar(64))");
+            stmt.execute("create table id_sequence(name varchar(64) primary key, next_id bigint not null)");
+        }
+        access = new ItemAccess();
+        access.setDataSource(dataSource);
+    }
+
+    public void testInsertAllWritesBackKeys() throws SQLException {
+        access.setBatchSize(3);
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            items.add(new Item("item" + i));
+        }
+        access.insertAll(items, 7);
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("select name, parent_id from item where id = ?")) {
+            for (Item item : items) {
+                assertTrue(item.id > 0);
+                stmt.setInt(1, item.id);
+                try (ResultSet resultSet = stmt.executeQuery()) {
+                    assertTrue(resultSet.next());
+                    assertEquals(item.name, resultSet.getString(1));
+                    assertEquals(7, resultSet.getInt(2));
+                }
+            }
+        }
+    }
+
+    public void testInsertGraphLevelByLevel() throws SQLException {
+        access.setBatchSize(2);
+        access.addChildLink(access, new DbAccess.ChildrenOf<Item, Item>() {
+            @Override
+            public List<Item> children(Item parent) {
+                return parent.children;
+            }
+        });
+        List<Item> roots = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Item root = new Item("root" + i);
+            for (int j = 0; j < 3; j++) {
+                Item child = new Item("child" + i + j);
+                child.children.add(new Item("leaf" + i + j));
+                root.children.add(child);
+            }
+            roots.add(root);
+        }
+        access.insertGraph(roots, 0);
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement stmt = connection.prepareStatement("select parent_id from item where id = ?")) {
+            for (Item root : roots) {
+                assertEquals(0, parentOf(stmt, root));
+                for (Item child : root.children) {
+                    assertEquals(root.id, parentOf(stmt, child));
+                    assertEquals(child.id, parentOf(stmt, child.children.get(0)));
+                }
+            }
+        }
+    }
+
+    public void testInsertGraphRollsBackWholeGraph() throws SQLException {
+        access.addChildLink(access, new DbAccess.ChildrenOf<Item, Item>() {
+            @Override
+            public List<Item> children(Item parent) {
+                return parent.children;
+            }
+        });
+        Item root = new Item("root");
+        root.children.add(new Item("child"));
+        // Longer than the name column, so the second level fails
+        root.children.get(0).children.add(new Item(String.format("%065d", 0)));
+        try {
+            access.insertGraph(Collections.singletonList(root), 0);
+            fail("Inserted leaf longer than its column");
+        } catch (SQLException e) {
+            assertEquals(0, count("select count(*) from item"));
+        }
+    }
+
+    public void testWriteBehindGroupCommit() throws Exception {
+        List<CompletableFuture<Item>> futures = new ArrayList<>();
+        try (WriteBehindQueue<Item> queue = new WriteBehindQueue<>(access, 16, 2, 8,
+                                                                   WriteBehindQueue.Backpressure.BLOCK)) {
+            for (int i = 0; i < 50; i++) {
+                futures.add(queue.submit(new Item("queued" + i), 3));
+            }
+        }
+        for (CompletableFuture<Item> future : futures) {
+            assertTrue(future.get().id > 0);
+        }
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet resultSet = stmt.executeQuery("select count(*) from item where parent_id = 3")) {
+            assertTrue(resultSet.next());
+            assertEquals(50, resultSet.getInt(1));
+        }
+    }
+
+    public void testWriteBehindFailsOnlyBadRow() throws Exception {
+        List<CompletableFuture<Item>> futures = new ArrayList<>();
+        try (WriteBehindQueue<Item> queue = new WriteBehindQueue<>(access, 16, 1, 8,
+                                                                   WriteBehindQueue.Backpressure.BLOCK)) {
+            for (int i = 0; i < 8; i++) {
+                futures.add(queue.submit(new Item(i == 3 ? String.format("%065d", i) : "batched" + i), 4));
+            }
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                assertTrue(futures.get(i).get().id > 0);
+                assertTrue(i != 3);
+            } catch (ExecutionException e) {
+                assertEquals(3, i);
+            }
+        }
+        assertEquals(7, count("select count(*) from item where parent_id = 4"));
+    }
+
+    public void testSelectAndStream() throws SQLException {
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            items.add(new Item("row" + i));
+        }
+        access.insertAll(items, 5);
+
+        final List<String> names = new ArrayList<>();
+        access.select("select id, name from item where parent_id = ? order by id", 4, true,
+                      new DbAccess.RowVisitor<Item>() {
+                          Item previous;
+
+                          @Override
+                          public boolean visit(Item instance) {
+                              assertTrue(previous == null || previous == instance);
+                              previous = instance;
+                              names.add(instance.name);
+                              return names.size() < 10;
+                          }
+                      }, 5);
+        assertEquals(10, names.size());
+        assertEquals("row9", names.get(9));
+
+        try (Stream<Item> rows = access.stream("select id, name from item where parent_id = ?", 4, false, 5)) {
+            assertEquals(20, rows.filter(new Predicate<Item>() {
+                @Override
+                public boolean test(Item item) {
+                    return item.id > 0;
+                }
+            }).count());
+        }
+    }
+
+    public void testWriteSelectAsJson() throws Exception {
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            items.add(new Item("json" + i));
+        }
+        access.insertAll(items, 6);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(5, new JsonStreamer().writeSelect(access, "select id, name from item where parent_id = ? "
+                                                               + "order by id", 2, out, 6));
+        JSONArray array = JSON.parseArray(out.toString("UTF-8"));
+        assertEquals(5, array.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(items.get(i).id, array.getJSONObject(i).getIntValue("id"));
+        }
+    }
+
+    public void testEntityCacheReadAndWriteThrough() throws SQLException {
+        EntityCache<Item> cache = new EntityCache<>(access, "select id, name from item where id = ?", 2, 60000L);
+        Item              first = new Item("first");
+        cache.insert(first, 0);
+        assertSame(first, cache.get(first.id));
+        assertEquals(1, cache.getHits());
+
+        Item second = new Item("second");
+        access.insert(second, 0);
+        Item loaded = cache.get(second.id);
+        assertEquals("second", loaded.name);
+        assertSame(loaded, cache.get(second.id));
+        assertNull(cache.get(-1));
+
+        Item third = new Item("third");
+        cache.insert(third, 0);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.size());
+    }
+
+    public void testSequenceBlockIdAllocator() throws SQLException {
+        access.setIdAllocator(new SequenceBlockIdAllocator(dataSource, "item", 5));
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            items.add(new Item("preassigned" + i));
+        }
+        access.insertAll(items, 0);
+        Item single = new Item("single");
+        access.insert(single, 0);
+
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(i + 1, items.get(i).id);
+        }
+        assertEquals(13, single.id);
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet resultSet = stmt.executeQuery("select next_id from id_sequence where name = 'item'")) {
+            assertTrue(resultSet.next());
+            assertEquals(16L, resultSet.getLong(1));
+        }
+    }
+
+    public void testPoolStatementCacheAcrossCalls() throws SQLException {
+        DruidDataSource druid = new DruidDataSource();
+        druid.setUrl(url);
+        druid.setMaxActive(1);
+        DataSourceManager.enableStatementCache(druid, 4);
+        try {
+            access.setDataSource(druid);
+            List<Item> items = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                Item item = new Item("cached" + i);
+                access.insert(item, 0);
+                items.add(item);
+            }
+            access.insertAll(items.subList(0, 2), 1);
+            assertEquals(5L, druid.getCachedPreparedStatementHitCount());
+            assertEquals(1L, druid.getCachedPreparedStatementMissCount());
+            assertEquals(5.0 / 6, DataSourceManager.getStatementCacheHitRate(druid), 1e-9);
+            assertEquals(0, druid.getActiveCount());
+            assertTrue(items.get(4).id > items.get(3).id);
+        } finally {
+            druid.close();
+        }
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet resultSet = stmt.executeQuery(sql)) {
+            assertTrue(resultSet.next());
+            return resultSet.getInt(1);
+        }
+    }
+
+    private static int parentOf(PreparedStatement stmt, Item item) throws SQLException {
+        stmt.setInt(1, item.id);
+        try (ResultSet resultSet = stmt.executeQuery()) {
+            assertTrue(resultSet.next());
+            return resultSet.getInt(1);
+        }
+    }
+}
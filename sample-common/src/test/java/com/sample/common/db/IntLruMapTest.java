@@ -0,0 +1,57 @@
+package com.sample.common.db;
+
+import junit.framework.TestCase;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class IntLruMapTest extends TestCase {
+
+    public void testEvictsLeastRecentlyUsed() {
+        IntLruMap<String> map = new IntLruMap<>(2);
+        long              far = Long.MAX_VALUE / 2;
+        assertNull(map.put(1, "a", far));
+        assertNull(map.put(2, "b", far));
+        assertEquals("a", map.get(1, 0L));
+        assertEquals("b", map.put(3, "c", far));
+        assertNull(map.get(2, 0L));
+        assertEquals("a", map.get(1, 0L));
+        assertEquals("c", map.get(3, 0L));
+    }
+
+    public void testExpiredEntryRemoved() {
+        IntLruMap<String> map = new IntLruMap<>(4);
+        map.put(1, "a", 100L);
+        assertEquals("a", map.get(1, 99L));
+        assertNull(map.get(1, 100L));
+        assertEquals(0, map.size());
+    }
+
+    public void testMatchesLinkedHashMap() {
+        final int                       capacity = 64;
+        IntLruMap<Integer>              map      = new IntLruMap<>(capacity);
+        LinkedHashMap<Integer, Integer> expected = new LinkedHashMap<Integer, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+                return size() > capacity;
+            }
+        };
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(200) * 1024; // Colliding keys exercise probing and backward shift deletion
+            switch (random.nextInt(3)) {
+                case 0:
+                    map.put(key, i, Long.MAX_VALUE / 2);
+                    expected.put(key, i);
+                    break;
+                case 1:
+                    assertEquals(expected.get(key), map.get(key, 0L));
+                    break;
+                default:
+                    assertEquals(expected.remove(key) != null, map.remove(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.sample.common.db;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import junit.framework.TestCase;
+
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PoolMetrics of real Druid and Hikari pools of one connection on H2: a borrow waits for the connection held by
+ * another, then a borrow times out while it is held
+ */
+public class PoolMetricsTest extends TestCase {
+    private static final long HOLD_MILLIS = 300L;
+
+    private static int sequence;
+
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown() {
+        executor.shutdownNow();
+    }
+
+    public void testDruid() throws Exception {
+        DruidDataSource druid = new DruidDataSource();
+        druid.setName("druid-metrics-test");
+        druid.setUrl("jdbc:h2:mem:poolMetrics" + (sequence++));
+        druid.setMaxActive(1);
+        druid.setMaxWait(5000L);
+        PoolMetrics metrics = PoolMetrics.attach(druid);
+        try {
+            checkWaitAndUsage(druid, metrics);
+            druid.setMaxWait(100L);
+            checkTimeout(druid, metrics);
+            checkMBean(metrics);
+        } finally {
+            druid.close();
+        }
+    }
+
+    public void testHikari() throws Exception {
+        HikariDataSource hikari = new HikariDataSource();
+        hikari.setPoolName("hikari-metrics-test");
+        hikari.setJdbcUrl("jdbc:h2:mem:poolMetrics" + (sequence++));
+        hikari.setMaximumPoolSize(1);
+        hikari.setConnectionTimeout(5000L);
+        PoolMetrics metrics = PoolMetrics.attach(hikari);
+        try {
+            checkWaitAndUsage(hikari, metrics);
+            hikari.setConnectionTimeout(250L);
+            checkTimeout(hikari, metrics);
+            checkMBean(metrics);
+        } finally {
+            hikari.close();
+        }
+    }
+
+    /**
+     * Hold the only connection for HOLD_MILLIS while another borrow waits for it
+     */
+    private void checkWaitAndUsage(DataSource dataSource, PoolMetrics metrics) throws Exception {
+        dataSource.getConnection().close();
+        Future<Long> waiting;
+        try (Connection held = dataSource.getConnection()) {
+            assertFalse(held.isClosed());
+            waiting = borrowLater(dataSource);
+            Thread.sleep(HOLD_MILLIS);
+        }
+        long waitedMillis = waiting.get(5L, TimeUnit.SECONDS);
+        assertTrue(waitedMillis >= HOLD_MILLIS / 2);
+
+        PoolMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(3, snapshot.borrows);
+        assertEquals(3, snapshot.returns);
+        assertEquals(0, snapshot.timeouts);
+        assertEquals(0, snapshot.active);
+        assertEquals(1, snapshot.max);
+        assertTrue(snapshot.acquireMaxMicros >= TimeUnit.MILLISECONDS.toMicros(HOLD_MILLIS / 2));
+        assertTrue(snapshot.acquireMaxMicros <= TimeUnit.MILLISECONDS.toMicros(waitedMillis) * 2);
+        assertTrue(snapshot.usageMaxMillis >= HOLD_MILLIS);
+    }
+
+    private void checkTimeout(DataSource dataSource, PoolMetrics metrics) throws Exception {
+        try (Connection held = dataSource.getConnection()) {
+            assertFalse(held.isClosed());
+            try {
+                dataSource.getConnection().close();
+                fail("Borrow should time out while the only connection is held");
+            } catch (SQLException e) {
+                // expected
+            }
+        }
+        PoolMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.timeouts);
+        assertEquals(4, snapshot.borrows);
+        assertEquals(4, snapshot.returns);
+    }
+
+    private void checkMBean(PoolMetrics metrics) throws Exception {
+        metrics.registerMBean();
+        try {
+            assertEquals(4L, ManagementFactory.getPlatformMBeanServer().getAttribute(
+                    new ObjectName("com.sample.common.db:type=PoolMetrics,name=\"" + metrics.getName() + "\""),
+                    "BorrowCount"));
+        } finally {
+            metrics.unregisterMBean();
+        }
+    }
+
+    /**
+     * @return Millis the borrow waited for a connection
+     */
+    private Future<Long> borrowLater(final DataSource dataSource) {
+        return executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() throws SQLException {
+                long start = System.nanoTime();
+                try (Connection connection = dataSource.getConnection()) {
+                    assertFalse(connection.isClosed());
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,64 @@
+package com.sample.common.db;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+public class PoolSizeControllerTest extends TestCase {
+    private int max    = 8;
+    private int active = 0;
+
+    private final PoolMetrics metrics = new PoolMetrics("test", new PoolMetrics.PoolProbe() {
+        @Override
+        public int getActive() {
+            return active;
+        }
+
+        @Override
+        public int getIdle() {
+            return max - active;
+        }
+
+        @Override
+        public int getTotal() {
+            return max;
+        }
+
+        @Override
+        public int getPending() {
+            return 0;
+        }
+
+        @Override
+        public int getMax() {
+            return max;
+        }
+
+        @Override
+        public void setMax(int value) {
+            max = value;
+        }
+    });
+
+    public void testIncreaseOnSlowAcquireAndDecreaseWhenIdle() {
+        PoolSizeController controller = new PoolSizeController(metrics, 4, 12, 2, 10L, 1000L);
+        for (int i = 0; i < 100; i++) {
+            metrics.recordAcquire(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        active = 8;
+        assertEquals(10, controller.adjust());
+        for (int i = 0; i < 100; i++) {
+            metrics.recordAcquire(TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        assertEquals(12, controller.adjust());
+        assertEquals(12, controller.adjust()); // Bounded by max size, last interval had no slow acquiring
+
+        active = 1;
+        assertEquals(12, controller.adjust());
+        assertEquals(12, controller.adjust());
+        assertEquals(9, controller.adjust());  // Decrease after 3 idle intervals
+        assertEquals(2, controller.getIncreaseCount());
+        assertEquals(1, controller.getDecreaseCount());
+        assertTrue(controller.getLastDecision().startsWith("decrease 12 -> 9"));
+    }
+}
@@ -0,0 +1,150 @@
+package com.sample.common.db;
+
+import junit.framework.TestCase;
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+/**
+ * Routing over embedded H2 databases, each database holds its own name in table node
+ */
+public class RoutingDataSourceTest extends TestCase {
+    private static int sequence;
+
+    private String prefix;
+
+    @Override
+    protected void setUp() {
+        prefix = "jdbc:h2:mem:routing" + (sequence++) + "_";
+    }
+
+    private JdbcDataSource createNode(String name) throws SQLException {
+        JdbcDataSource source = new JdbcDataSource();
+        source.setURL(prefix + name + ";DB_CLOSE_DELAY=-1");
+        try (Connection connection = source.getConnection();
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("create table node(name varchar(16))");
+            stmt.execute("insert into node values('" + name + "')");
+        }
+        return source;
+    }
+
+    private static String nodeOf(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet resultSet = stmt.executeQuery("select name from node")) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+    public void testRoutesReadsToLeastOutstandingReplica() throws Exception {
+        try (final RoutingDataSource routing = new RoutingDataSource(
+                createNode("primary"), Arrays.asList(createNode("replica1"), createNode("replica2")), 1000L)) {
+            try (Connection connection = routing.getConnection()) {
+                assertEquals("primary", nodeOf(connection));
+            }
+            try (Connection first = routing.getReadOnlyConnection();
+                 Connection second = routing.getReadOnlyConnection()) {
+                assertTrue(nodeOf(first).startsWith("replica"));
+                assertTrue(nodeOf(second).startsWith("replica"));
+                assertFalse(nodeOf(first).equals(nodeOf(second)));
+            }
+            String node = routing.readOnly(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    try (Connection connection = routing.getConnection()) {
+                        return nodeOf(connection);
+                    }
+                }
+            });
+            assertTrue(node.startsWith("replica"));
+        }
+    }
+
+    public void testReadsOwnWritesWhileHoldingPrimary() throws Exception {
+        try (RoutingDataSource routing = new RoutingDataSource(
+                createNode("primary"), Arrays.asList(createNode("replica1")), 1000L)) {
+            try (Connection primary = routing.getConnection();
+                 Connection read = routing.getReadOnlyConnection()) {
+                assertEquals("primary", nodeOf(primary));
+                assertEquals("primary", nodeOf(read));
+            }
+            try (Connection read = routing.getReadOnlyConnection()) {
+                assertEquals("replica1", nodeOf(read));
+            }
+        }
+    }
+
+    public void testUnhealthyReplicaOutOfRotationUntilRecovered() throws Exception {
+        JdbcDataSource missing = new JdbcDataSource();
+        missing.setURL(prefix + "late;IFEXISTS=TRUE");
+        try (RoutingDataSource routing = new RoutingDataSource(createNode("primary"), Arrays.asList(missing), 50L)) {
+            try (Connection read = routing.getReadOnlyConnection()) {
+                assertEquals("primary", nodeOf(read));
+            }
+            assertEquals(0, routing.getHealthyReplicas());
+
+            try (Connection late = DriverManager.getConnection(prefix + "late;DB_CLOSE_DELAY=-1");
+                 Statement stmt = late.createStatement()) {
+                stmt.execute("create table node(name varchar(16))");
+                stmt.execute("insert into node values('late')");
+            }
+            for (int i = 0; i < 100 && routing.getHealthyReplicas() == 0; i++) {
+                Thread.sleep(20L);
+            }
+            try (Connection read = routing.getReadOnlyConnection()) {
+                assertEquals("late", nodeOf(read));
+            }
+        }
+    }
+
+    public void testLeakedPrimaryConnectionDoesNotPinThread() throws Exception {
+        try (final RoutingDataSource routing = new RoutingDataSource(
+                createNode("primary"), Arrays.asList(createNode("replica1")), 1000L)) {
+            Connection leaked;
+            try (Connection primary = routing.getConnection()) {
+                assertEquals("primary", nodeOf(primary));
+                leaked = routing.readOnly(new Callable<Connection>() {
+                    @Override
+                    public Connection call() throws Exception {
+                        return routing.getConnection();
+                    }
+                });
+                assertEquals("primary", nodeOf(leaked));
+            }
+            try (Connection read = routing.getReadOnlyConnection()) {
+                assertEquals("replica1", nodeOf(read));
+            }
+            leaked.close();
+            try (Connection read = routing.getReadOnlyConnection()) {
+                assertEquals("replica1", nodeOf(read));
+            }
+        }
+    }
+
+    public void testFailedReplicaTakenOutByHealthCheck() throws Exception {
+        createNode("replica1");
+        JdbcDataSource replica = new JdbcDataSource();
+        replica.setURL(prefix + "replica1;IFEXISTS=TRUE");
+        try (RoutingDataSource routing = new RoutingDataSource(createNode("primary"), Arrays.asList(replica), 50L)) {
+            assertEquals(1, routing.getHealthyReplicas());
+            try (Connection connection = replica.getConnection();
+                 Statement stmt = connection.createStatement()) {
+                stmt.execute("shutdown");
+            }
+            for (int i = 0; i < 100 && routing.getHealthyReplicas() == 1; i++) {
+                Thread.sleep(20L);
+            }
+            assertEquals(0, routing.getHealthyReplicas());
+            try (Connection read = routing.getReadOnlyConnection()) {
+                assertEquals("primary", nodeOf(read));
+            }
+        }
+    }
+}
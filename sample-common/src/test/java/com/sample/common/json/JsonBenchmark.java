@@ -0,0 +1,67 @@
+package com.sample.common.json;
+
+import com.alibaba.fastjson.JSON;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Serializes orders to a discarding stream, comparing the naive way (collect entities, JSON.toJSONString, getBytes)
+ * with JsonStreamer, printing time, output size and bytes allocated by the thread for each round.
+ * <p>
+ * Run: mvn -pl sample-common test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.sample.common.json.JsonBenchmark [-Dexec.args=orders]
+ */
+public class JsonBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Counts bytes and drops them
+     */
+    private static class NullOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            count += length;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int          orders   = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        JsonStreamer streamer = new JsonStreamer();
+        for (int round = 0; round < 5; round++) {
+            NullOutputStream             out       = new NullOutputStream();
+            long                         allocated = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long                         start     = System.nanoTime();
+            List<JsonStreamerTest.Order> list      = JsonStreamerTest.orders(orders).collect(
+                    Collectors.<JsonStreamerTest.Order>toList());
+            out.write(JSON.toJSONString(list).getBytes(StandardCharsets.UTF_8));
+            report("naive", out.count, start, allocated);
+
+            out = new NullOutputStream();
+            allocated = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+            start = System.nanoTime();
+            streamer.writeArray(JsonStreamerTest.orders(orders), out);
+            report("JsonStreamer", out.count, start, allocated);
+        }
+    }
+
+    private static void report(String name, long bytes, long start, long allocated) {
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-13s %6d ms %8.1f MB/s %10d bytes out %12d bytes allocated%n", name,
+                          TimeUnit.NANOSECONDS.toMillis(elapsed), bytes * 1e9 / elapsed / (1 << 20), bytes,
+                          THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated);
+    }
+}
@@ -0,0 +1,157 @@
+package com.sample.common.json;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializeWriter;
+import com.sample.common.db.Incremental;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+public class JsonStreamerTest extends TestCase {
+    public static class Order implements Incremental {
+        private int          id;
+        private String       customer;
+        private double       amount;
+        private List<String> tags;
+
+        @Override
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        public String getCustomer() {
+            return customer;
+        }
+
+        public void setCustomer(String customer) {
+            this.customer = customer;
+        }
+
+        public double getAmount() {
+            return amount;
+        }
+
+        public void setAmount(double amount) {
+            this.amount = amount;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(List<String> tags) {
+            this.tags = tags;
+        }
+    }
+
+    static Stream<Order> orders(int count) {
+        return IntStream.range(0, count).mapToObj(new IntFunction<Order>() {
+            @Override
+            public Order apply(int i) {
+                Order order = new Order();
+                order.setId(i);
+                order.setCustomer("客户\"" + i);
+                order.setAmount(i * 1.5);
+                order.setTags(Arrays.asList("a" + i, "b"));
+                return order;
+            }
+        });
+    }
+
+    /**
+     * Output larger than the char buffer of SerializeWriter, so it is flushed many times
+     */
+    public void testWriteAndReadArray() throws IOException {
+        JsonStreamer          streamer = new JsonStreamer();
+        ByteArrayOutputStream out      = new ByteArrayOutputStream();
+        assertEquals(20000, streamer.writeArray(orders(20000), out));
+        byte[] json = out.toByteArray();
+        assertEquals(JSON.toJSONString(orders(20000).toArray()), new String(json, "UTF-8"));
+
+        final List<Order> orders = new ArrayList<>();
+        assertEquals(20000, streamer.readArray(new ByteArrayInputStream(json), Order.class, new Consumer<Order>() {
+            @Override
+            public void accept(Order order) {
+                orders.add(order);
+            }
+        }));
+        assertEquals("客户\"19999", orders.get(19999).getCustomer());
+        assertEquals(Arrays.asList("a7", "b"), orders.get(7).getTags());
+    }
+
+    public void testWriteToChannelWithReusedInstance() throws IOException {
+        final Order order = new Order();
+        order.setCustomer("same");
+        Path file = Files.createTempFile("json", ".json");
+        try {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                new JsonStreamer().writeArray(IntStream.range(0, 3).mapToObj(new IntFunction<Order>() {
+                    @Override
+                    public Order apply(int i) {
+                        order.setId(i);
+                        return order;
+                    }
+                }), channel);
+                channel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+            }
+            assertEquals("[{\"amount\":0.0,\"customer\":\"same\",\"id\":0},"
+                         + "{\"amount\":0.0,\"customer\":\"same\",\"id\":1},"
+                         + "{\"amount\":0.0,\"customer\":\"same\",\"id\":2}]\n",
+                         new String(Files.readAllBytes(file), "UTF-8"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    public void testFailedWriteReleasesBufferAndWritesNothing() throws Exception {
+        Field bufLocal = SerializeWriter.class.getDeclaredField("bufLocal");
+        bufLocal.setAccessible(true);
+        final Iterator<Order> orders = orders(10).iterator();
+        StringWriter          writer = new StringWriter();
+        try {
+            new JsonStreamer().writeArray(new Iterator<Order>() {
+                private int count;
+
+                @Override
+                public boolean hasNext() {
+                    return true;
+                }
+
+                @Override
+                public Order next() {
+                    if (count++ == 5) {
+                        throw new IllegalStateException("Source failed");
+                    }
+                    return orders.next();
+                }
+            }, writer);
+            fail("Failure of source should propagate");
+        } catch (IllegalStateException e) {
+            assertEquals("Source failed", e.getMessage());
+        }
+        assertEquals("", writer.toString());
+        assertNotNull(((ThreadLocal<?>) bufLocal.get(null)).get());
+    }
+}
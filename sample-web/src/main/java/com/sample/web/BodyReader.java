@@ -0,0 +1,81 @@
+package com.sample.web;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking reader of an async request body: data is read only while the input is ready and the container calls
+ * back when more arrives, so no thread waits for a slow client.
+ */
+final class BodyReader implements ReadListener {
+    /**
+     * Body longer than the limit, answered by 413
+     */
+    static final class TooLargeException extends IOException {
+        TooLargeException(long maxSize) {
+            super("Request body exceeds " + maxSize + " bytes");
+        }
+    }
+
+    private final ServletInputStream        in;
+    private final int                       maxSize;
+    private final ByteArrayOutputStream     body;
+    private final byte[]                    buffer = new byte[8192];
+    private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+    private BodyReader(ServletInputStream in, int maxSize, int expected) {
+        this.in = in;
+        this.maxSize = maxSize;
+        this.body = new ByteArrayOutputStream(expected > 0 ? expected : 1024);
+    }
+
+    /**
+     * Read body of request after startAsync
+     *
+     * @return Future of body, completed on a container thread
+     */
+    static CompletableFuture<byte[]> read(HttpServletRequest request, int maxSize) {
+        long length = request.getContentLengthLong();
+        if (length > maxSize) {
+            CompletableFuture<byte[]> result = new CompletableFuture<>();
+            result.completeExceptionally(new TooLargeException(maxSize));
+            return result;
+        }
+        BodyReader reader;
+        try {
+            reader = new BodyReader(request.getInputStream(), maxSize, (int) length);
+            reader.in.setReadListener(reader);
+        } catch (IOException | RuntimeException e) {
+            CompletableFuture<byte[]> result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+        return reader.result;
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException {
+        int count;
+        while (!result.isDone() && in.isReady() && (count = in.read(buffer)) >= 0) {
+            if (body.size() + count > maxSize) {
+                result.completeExceptionally(new TooLargeException(maxSize));
+                return;
+            }
+            body.write(buffer, 0, count);
+        }
+    }
+
+    @Override
+    public void onAllDataRead() {
+        result.complete(body.toByteArray());
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        result.completeExceptionally(throwable);
+    }
+}
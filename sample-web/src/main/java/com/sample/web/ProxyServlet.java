@@ -0,0 +1,133 @@
+package com.sample.web;
+
+import com.sample.common.AsyncHttpClient;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.UnavailableException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+/**
+ * Forwards /proxy/{path} to the same path of init-param "target", or of system property TARGET_PROPERTY if the
+ * init-param is not set, by the pooled async http client; without either the servlet is permanently unavailable.
+ * The body is read by BodyReader and the answer written by ResponseWriter, both non-blocking; the downstream call
+ * holds no thread while waiting, so a slow downstream ties up connections of the pool, not container threads. Only
+ * the headers in FORWARDED_HEADERS are passed on, and only status, content type and body are sent back.
+ */
+public class ProxyServlet extends HttpServlet {
+    /**
+     * System property of downstream service, Eg: mvn -pl sample-web jetty:run -Dsample.web.proxyTarget=http://host:port
+     */
+    static final String TARGET_PROPERTY = "sample.web.proxyTarget";
+
+    static final String[] FORWARDED_HEADERS = {"Content-Type", "Accept", "Accept-Language", "Authorization"};
+
+    /**
+     * Timeout (ms) of a whole request, the downstream call is cancelled after it
+     */
+    static final long TIMEOUT_MILLIS = 30000L;
+
+    private AsyncHttpClient client;
+    private String          target;
+    private int             maxBodySize;
+
+    @Override
+    public void init() throws ServletException {
+        client = WebServices.of(getServletContext()).getHttpClient();
+        target = getInitParameter("target");
+        if (target == null) {
+            target = System.getProperty(TARGET_PROPERTY);
+        }
+        if (target == null) {
+            throw new UnavailableException("Missing init-param target or system property " + TARGET_PROPERTY);
+        }
+        if (target.endsWith("/")) {
+            target = target.substring(0, target.length() - 1);
+        }
+        String size = getInitParameter("maxBodySize");
+        maxBodySize = size == null ? 1024 * 1024 : Integer.parseInt(size.trim());
+    }
+
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response) {
+        // Raw path as sent by client: path info is decoded, so %20 would make an invalid URI and %2F, %3F would turn
+        // into delimiters of another request
+        String               path    = request.getRequestURI().substring(request.getContextPath().length()
+                                                                         + request.getServletPath().length());
+        String               query   = request.getQueryString();
+        final String         uri     = target + path + (query == null ? "" : "?" + query);
+        final RequestBuilder builder = RequestBuilder.create(request.getMethod());
+        for (String name : FORWARDED_HEADERS) {
+            String value = request.getHeader(name);
+            if (value != null) {
+                builder.addHeader(name, value);
+            }
+        }
+        AsyncContext context = request.startAsync();
+        context.setTimeout(TIMEOUT_MILLIS);
+        final ResponseWriter writer = new ResponseWriter(context, 1);
+        if (request.getContentLengthLong() <= 0 && request.getHeader("Transfer-Encoding") == null) {
+            forward(builder, uri, writer);
+            return;
+        }
+        BodyReader.read(request, maxBodySize).whenComplete(new BiConsumer<byte[], Throwable>() {
+            @Override
+            public void accept(byte[] body, Throwable throwable) {
+                if (throwable != null) {
+                    writer.fail(throwable instanceof BodyReader.TooLargeException
+                                        ? HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE
+                                        : HttpServletResponse.SC_BAD_REQUEST);
+                    return;
+                }
+                forward(builder.setEntity(new ByteArrayEntity(body)), uri, writer);
+            }
+        });
+    }
+
+    /**
+     * Send request to uri, a malformed uri is answered by 400
+     */
+    private void forward(RequestBuilder builder, String uri, final ResponseWriter writer) {
+        CompletableFuture<HttpResponse> future;
+        try {
+            future = client.execute(builder.setUri(uri).build());
+        } catch (IllegalArgumentException e) {
+            writer.fail(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        writer.cancelOnAbort(future);
+        future.whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+            @Override
+            public void accept(HttpResponse response, Throwable throwable) {
+                if (throwable != null) {
+                    writer.fail(throwable instanceof RejectedExecutionException
+                                        ? HttpServletResponse.SC_SERVICE_UNAVAILABLE
+                                        : HttpServletResponse.SC_BAD_GATEWAY);
+                    return;
+                }
+                try {
+                    // Entity is already buffered in memory by the async client
+                    HttpEntity entity      = response.getEntity();
+                    Header     contentType = entity == null ? null : entity.getContentType();
+                    writer.send(response.getStatusLine().getStatusCode(),
+                                contentType == null ? null : contentType.getValue(),
+                                entity == null ? new byte[0] : EntityUtils.toByteArray(entity));
+                } catch (IOException e) {
+                    writer.fail(HttpServletResponse.SC_BAD_GATEWAY);
+                }
+            }
+        });
+    }
+}
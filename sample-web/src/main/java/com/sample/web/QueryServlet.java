@@ -0,0 +1,73 @@
+package com.sample.web;
+
+import com.sample.common.json.JsonStreamer;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.OutputStream;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * GET /query/{name}?p=..&p=.. runs a query registered in WebServices and streams its rows as a JSON array. The
+ * container thread only starts async mode and hands the query to the database executor; rows are serialized there
+ * into chunks written by ResponseWriter, so a slow client holds back the query (up to QUEUED_CHUNKS) instead of
+ * piling the result up in memory.
+ */
+public class QueryServlet extends HttpServlet {
+    /**
+     * Chunks waiting for the client before the database thread is held back
+     */
+    static final int QUEUED_CHUNKS = 8;
+
+    /**
+     * Timeout (ms) of a whole request
+     */
+    static final long TIMEOUT_MILLIS = 60000L;
+
+    private WebServices services;
+
+    @Override
+    public void init() throws ServletException {
+        services = WebServices.of(getServletContext());
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+        String                     name  = request.getPathInfo() == null ? "" : request.getPathInfo().substring(1);
+        final WebServices.Query<?> query = services.getQuery(name);
+        if (query == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String[]           values   = request.getParameterValues("p");
+        final Object[]     params   = values == null ? new Object[0] : values;
+        final JsonStreamer streamer = services.getStreamer();
+        AsyncContext       context  = request.startAsync();
+        context.setTimeout(TIMEOUT_MILLIS);
+        final ResponseWriter writer = new ResponseWriter(context, QUEUED_CHUNKS);
+        response.setContentType("application/json;charset=UTF-8");
+        try {
+            services.getDbExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        OutputStream out = writer.openStream();
+                        streamer.writeSelect(query.getAccess(), query.getSql(), query.getFetchSize(), out, params);
+                        out.close();
+                    } catch (Exception e) {
+                        // Writes of an aborted response (client gone, timeout) fail too, that is no query failure
+                        if (!writer.isAborted()) {
+                            log("Query failed: " + query.getSql(), e);
+                            writer.fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            writer.fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+    }
+}
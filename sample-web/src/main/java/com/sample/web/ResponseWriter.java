@@ -0,0 +1,292 @@
+package com.sample.web;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking writer of an async response. Producers on any thread queue chunks; chunks are written only while the
+ * output is ready, by whichever thread gets the drain flag (a producer or the container calling onWritePossible), so
+ * no container thread waits for a slow client. The write listener is set by the first chunk, a failure before it can
+ * still choose the status; a failure after it completes the response as it is, truncated.
+ */
+final class ResponseWriter implements WriteListener, AsyncListener {
+    /**
+     * Bytes of a chunk written by stream, chunks are not reused as the container may write them later
+     */
+    static final int CHUNK_SIZE = 32 * 1024;
+
+    /**
+     * Interval (ms) a blocked producer checks whether the response is aborted
+     */
+    private static final long POLL_MILLIS = 100L;
+
+    private final    AsyncContext          context;
+    private final    HttpServletResponse   response;
+    private final    BlockingQueue<byte[]> chunks;
+    private final    AtomicBoolean         started        = new AtomicBoolean();
+    private final    AtomicBoolean         draining       = new AtomicBoolean();
+    private final    AtomicBoolean         drainRequested = new AtomicBoolean();
+    private final    AtomicBoolean         completed      = new AtomicBoolean();
+    private volatile ServletOutputStream   out;
+    private volatile boolean               finished;
+    private volatile Throwable             failure;
+    private volatile Future<?>             upstream;
+
+    /**
+     * @param capacity Chunks queued before producers are blocked
+     */
+    ResponseWriter(AsyncContext context, int capacity) {
+        this.context = context;
+        this.response = (HttpServletResponse) context.getResponse();
+        this.chunks = new ArrayBlockingQueue<>(capacity);
+        context.addListener(this);
+    }
+
+    /**
+     * Queue chunk, blocking while the queue is full; array is written as it is and must not be changed after
+     *
+     * @throws IOException if response is aborted by client, timeout or fail
+     */
+    void write(byte[] chunk) throws IOException {
+        try {
+            while (!chunks.offer(chunk, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkAborted();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for client");
+        }
+        checkAborted();
+        start();
+        drain();
+    }
+
+    /**
+     * Complete response after queued chunks are written
+     */
+    void finish() {
+        finished = true;
+        start();
+        drain();
+    }
+
+    /**
+     * Send status without body if nothing is written yet, otherwise complete response as it is
+     */
+    void fail(int status) {
+        if (failure == null) {
+            failure = new IOException("Response failed with status " + status);
+        }
+        chunks.clear();
+        if (started.compareAndSet(false, true)) {
+            response.reset();
+            response.setStatus(status);
+        }
+        complete();
+    }
+
+    /**
+     * Queue whole body, the queue should have room for it as callers may be I/O threads that must not block
+     */
+    void send(int status, String contentType, byte[] body) {
+        response.setStatus(status);
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+        response.setContentLength(body.length);
+        if (!chunks.offer(body)) {
+            throw new IllegalStateException("No room for body");
+        }
+        finish();
+    }
+
+    /**
+     * Cancel future (Eg: downstream request) if response is aborted
+     */
+    void cancelOnAbort(Future<?> future) {
+        upstream = future;
+        if (failure != null) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * @return Whether response is aborted by client, timeout or fail, further writes throw IOException
+     */
+    boolean isAborted() {
+        return failure != null;
+    }
+
+    /**
+     * Stream buffering writes into chunks, closing it finishes the response
+     */
+    OutputStream openStream() {
+        return new ChunkStream();
+    }
+
+    private void checkAborted() throws IOException {
+        if (failure != null) {
+            throw new IOException("Response aborted", failure);
+        }
+    }
+
+    private void start() {
+        if (started.compareAndSet(false, true)) {
+            try {
+                ServletOutputStream stream = response.getOutputStream();
+                stream.setWriteListener(this);
+                out = stream;
+            } catch (IOException | RuntimeException e) {
+                onError(e);
+            }
+        }
+    }
+
+    /**
+     * Write queued chunks while output is ready. Every call requests a drain before trying the flag; the holder
+     * clears the request when it takes the flag and drains again if a request came while it held the flag, so a
+     * call failing to get the flag (a producer with a new chunk, or onWritePossible after the holder saw the output
+     * not ready) is never lost.
+     */
+    private void drain() {
+        ServletOutputStream stream = out;
+        if (stream == null) {
+            // Listener not set yet, onWritePossible will follow
+            return;
+        }
+        drainRequested.set(true);
+        while (drainRequested.get() && draining.compareAndSet(false, true)) {
+            drainRequested.set(false);
+            try {
+                while (!completed.get() && stream.isReady()) {
+                    // Read flag before polling, chunks are queued before it is set
+                    boolean done  = finished;
+                    byte[]  chunk = chunks.poll();
+                    if (chunk != null) {
+                        stream.write(chunk);
+                    } else {
+                        if (done) {
+                            complete();
+                        }
+                        break;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                onError(e);
+            } finally {
+                draining.set(false);
+            }
+        }
+    }
+
+    private void complete() {
+        if (completed.compareAndSet(false, true)) {
+            context.complete();
+        }
+    }
+
+    @Override
+    public void onWritePossible() {
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        failure = throwable;
+        chunks.clear();
+        Future<?> future = upstream;
+        if (future != null) {
+            future.cancel(true);
+        }
+        complete();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        // Nothing to release
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        Future<?> future = upstream;
+        if (future != null) {
+            future.cancel(true);
+        }
+        fail(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        onError(event.getThrowable());
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+        // Not restarted
+    }
+
+    private final class ChunkStream extends OutputStream {
+        private byte[] buffer = new byte[CHUNK_SIZE];
+        private int    count;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == buffer.length) {
+                    flush();
+                }
+                int size = Math.min(length, buffer.length - count);
+                System.arraycopy(bytes, offset, buffer, count, size);
+                count += size;
+                offset += size;
+                length -= size;
+            }
+        }
+
+        /**
+         * Queue buffered bytes as a chunk
+         */
+        @Override
+        public void flush() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            byte[] chunk;
+            if (count == buffer.length) {
+                chunk = buffer;
+                buffer = new byte[CHUNK_SIZE];
+            } else {
+                chunk = Arrays.copyOf(buffer, count);
+            }
+            count = 0;
+            ResponseWriter.this.write(chunk);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            finish();
+        }
+    }
+}
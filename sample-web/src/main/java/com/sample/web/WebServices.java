@@ -0,0 +1,156 @@
+package com.sample.web;
+
+import com.sample.common.AsyncHttpClient;
+import com.sample.common.HttpAsyncClientManager;
+import com.sample.common.HttpClientManager;
+import com.sample.common.db.DbAccess;
+import com.sample.common.db.Incremental;
+import com.sample.common.json.JsonStreamer;
+import org.apache.http.nio.reactor.IOReactorException;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Services shared by servlets of the web application, created when the context starts and closed when it stops:
+ * a bounded executor for database work, so that container threads never wait for JDBC; the pooled async http client
+ * for downstream calls; and the queries QueryServlet may run. Applications register their queries from a listener
+ * declared after this one.
+ */
+public class WebServices implements ServletContextListener {
+    private static final String ATTRIBUTE = WebServices.class.getName();
+
+    /**
+     * Query run by QueryServlet, rows are written as a JSON array
+     */
+    public static final class Query<T extends Incremental> {
+        private final DbAccess<T> access;
+        private final String      sql;
+        private final int         fetchSize;
+
+        Query(DbAccess<T> access, String sql, int fetchSize) {
+            this.access = access;
+            this.sql = sql;
+            this.fetchSize = fetchSize;
+        }
+
+        public DbAccess<T> getAccess() {
+            return access;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public int getFetchSize() {
+            return fetchSize;
+        }
+    }
+
+    private final ConcurrentMap<String, Query<?>> queries  = new ConcurrentHashMap<>();
+    private final JsonStreamer                    streamer = new JsonStreamer();
+    private       ThreadPoolExecutor              dbExecutor;
+    private       AsyncHttpClient                 httpClient;
+
+    /**
+     * Services of the web application, set by contextInitialized
+     */
+    public static WebServices of(ServletContext context) {
+        WebServices services = (WebServices) context.getAttribute(ATTRIBUTE);
+        if (services == null) {
+            throw new IllegalStateException(WebServices.class.getName() + " is not a listener of the context");
+        }
+        return services;
+    }
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        ServletContext context   = event.getServletContext();
+        int            threads   = intParameter(context, "sample.web.dbThreads", 16);
+        int            queueSize = intParameter(context, "sample.web.dbQueueSize", 256);
+        dbExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                                            new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "web-db-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        dbExecutor.allowCoreThreadTimeOut(true);
+        try {
+            httpClient = HttpAsyncClientManager.createHttpClient(HttpAsyncClientManager.createDefaultPool(null),
+                                                                 HttpClientManager.createRequestConfig());
+        } catch (IOReactorException e) {
+            dbExecutor.shutdown();
+            throw new IllegalStateException("Failed to create I/O reactor of http client", e);
+        }
+        context.setAttribute(ATTRIBUTE, this);
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        event.getServletContext().removeAttribute(ATTRIBUTE);
+        dbExecutor.shutdown();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            event.getServletContext().log("Failed to close http client", e);
+        }
+        try {
+            dbExecutor.awaitTermination(10L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int intParameter(ServletContext context, String name, int defaultValue) {
+        String value = context.getInitParameter(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * Register query served as GET /query/{name}, request parameters "p" are bound to its placeholders in order
+     *
+     * @param access    Access whose data source and getSelectData read the rows
+     * @param fetchSize Rows fetched per round trip
+     */
+    public <T extends Incremental> void register(String name, DbAccess<T> access, String sql, int fetchSize) {
+        queries.put(name, new Query<>(access, sql, fetchSize));
+    }
+
+    /**
+     * @return Registered query, null if not found
+     */
+    public Query<?> getQuery(String name) {
+        return queries.get(name);
+    }
+
+    /**
+     * Executor of database work, rejects tasks when its queue is full; its threads may block on JDBC and on slow
+     * clients through ResponseWriter
+     */
+    public ExecutorService getDbExecutor() {
+        return dbExecutor;
+    }
+
+    public AsyncHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public JsonStreamer getStreamer() {
+        return streamer;
+    }
+}
@@ -0,0 +1,148 @@
+package com.sample.web;
+
+import junit.framework.TestCase;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * BodyReader against a stub input stream fed by the test, the test plays the container by calling onDataAvailable,
+ * onAllDataRead and onError
+ */
+public class BodyReaderTest extends TestCase {
+    private StubInputStream in;
+
+    @Override
+    protected void setUp() {
+        in = new StubInputStream();
+    }
+
+    public void testReadsBodyArrivingInParts() throws Exception {
+        CompletableFuture<byte[]> body = BodyReader.read(stubRequest(-1L), 100);
+        assertNotNull(in.listener);
+
+        in.arrive("hello ");
+        in.listener.onDataAvailable();
+        assertFalse(body.isDone());
+        in.arrive("world");
+        in.finished = true;
+        in.listener.onDataAvailable();
+        in.listener.onAllDataRead();
+        assertEquals("hello world", new String(body.get()));
+    }
+
+    public void testDeclaredLengthOverLimitFailsAtOnce() {
+        CompletableFuture<byte[]> body = BodyReader.read(stubRequest(101L), 100);
+        assertNull(in.listener);
+        assertTooLarge(body);
+    }
+
+    public void testStreamedBodyOverLimitFails() throws IOException {
+        CompletableFuture<byte[]> body = BodyReader.read(stubRequest(-1L), 8);
+        in.arrive("12345");
+        in.listener.onDataAvailable();
+        assertFalse(body.isDone());
+        in.arrive("6789");
+        in.listener.onDataAvailable();
+        assertTooLarge(body);
+    }
+
+    public void testErrorFailsBody() {
+        CompletableFuture<byte[]> body = BodyReader.read(stubRequest(10L), 100);
+        IOException               error = new IOException("Client gone");
+        in.listener.onError(error);
+        try {
+            body.get();
+            fail("Body should fail with the read error");
+        } catch (ExecutionException e) {
+            assertSame(error, e.getCause());
+        } catch (InterruptedException e) {
+            fail("Interrupted");
+        }
+    }
+
+    private static void assertTooLarge(CompletableFuture<byte[]> body) {
+        try {
+            body.get();
+            fail("Body should be too large");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BodyReader.TooLargeException);
+        } catch (InterruptedException e) {
+            fail("Interrupted");
+        }
+    }
+
+    private HttpServletRequest stubRequest(final long contentLength) {
+        return (HttpServletRequest) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{HttpServletRequest.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "getContentLengthLong":
+                                return contentLength;
+                            case "getInputStream":
+                                return in;
+                            default:
+                                return null;
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Input stream ready while bytes fed by test remain, at end once finished
+     */
+    private static class StubInputStream extends ServletInputStream {
+        private final Queue<Byte> bytes = new ArrayDeque<>();
+        boolean                   finished;
+        ReadListener              listener;
+
+        void arrive(String text) {
+            for (byte b : text.getBytes()) {
+                bytes.add(b);
+            }
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished && bytes.isEmpty();
+        }
+
+        @Override
+        public boolean isReady() {
+            return !bytes.isEmpty() || finished;
+        }
+
+        @Override
+        public void setReadListener(ReadListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public int read() {
+            Byte b = bytes.poll();
+            return b == null ? -1 : b & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] data, int offset, int length) {
+            if (bytes.isEmpty()) {
+                return finished ? -1 : 0;
+            }
+            int count = 0;
+            while (count < length && !bytes.isEmpty()) {
+                data[offset + count++] = bytes.poll();
+            }
+            return count;
+        }
+    }
+}
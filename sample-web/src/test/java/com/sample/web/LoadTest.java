@@ -0,0 +1,123 @@
+package com.sample.web;
+
+import com.sample.common.AsyncHttpClient;
+import com.sample.common.HttpAsyncClientManager;
+import com.sample.common.HttpClientManager;
+import com.sample.common.LatencyHistogram;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Closed-loop load against a running server: a fixed number of requests are kept in flight by the pooled async http
+ * client, each answer sends the next one, so a few I/O threads drive the whole load. Prints throughput, latency
+ * percentiles and failures per second and for the whole run (after warm-up).
+ * <p>
+ * Start the embedded Jetty: mvn -pl sample-web jetty:run; to load the proxy, give it a downstream service by
+ * -Dsample.web.proxyTarget=http://host:port and pass a /proxy/... url.
+ * <p>
+ * Run: mvn -pl sample-web test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.sample.web.LoadTest
+ * [-Dexec.args="url concurrency seconds warmUpSeconds"]
+ */
+public class LoadTest {
+    private final    AsyncHttpClient  client;
+    private final    String           url;
+    private final    LatencyHistogram latencies = new LatencyHistogram();
+    private final    AtomicLong       succeeded = new AtomicLong();
+    private final    AtomicLong       failed    = new AtomicLong();
+    private final    AtomicLong       bytes     = new AtomicLong();
+    private final    CountDownLatch   stopped;
+    private volatile long             deadline;
+    private volatile boolean          measuring;
+
+    private LoadTest(AsyncHttpClient client, String url, int concurrency) {
+        this.client = client;
+        this.url = url;
+        this.stopped = new CountDownLatch(concurrency);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url         = args.length > 0 ? args[0] : "http://localhost:8080/index.jsp";
+        int    concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int    seconds     = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int    warmUp      = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        AsyncHttpClient client = HttpAsyncClientManager.createHttpClient(
+                HttpAsyncClientManager.createPool(null, 2, concurrency, concurrency, true, true, 20000, -1, true),
+                HttpClientManager.createRequestConfig(), concurrency, concurrency);
+        try {
+            new LoadTest(client, url, concurrency).run(concurrency, seconds, warmUp);
+        } finally {
+            client.close();
+        }
+    }
+
+    private void run(int concurrency, int seconds, int warmUp) throws InterruptedException {
+        System.out.printf("%s: %d in flight, %d s after %d s warm-up%n", url, concurrency, seconds, warmUp);
+        long start = System.nanoTime();
+        deadline = start + TimeUnit.SECONDS.toNanos(warmUp + seconds);
+        for (int i = 0; i < concurrency; i++) {
+            send();
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmUp));
+        measuring = true;
+        long   measureStart = System.nanoTime();
+        long[] counts       = latencies.copyCounts(null);
+        long[] previous     = new long[counts.length];
+        long   lastFailed   = 0L;
+        for (int second = 1; second <= seconds; second++) {
+            Thread.sleep(1000L);
+            System.arraycopy(counts, 0, previous, 0, counts.length);
+            latencies.copyCounts(counts);
+            long interval = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                previous[i] = counts[i] - previous[i];
+                interval += previous[i];
+            }
+            long failures = failed.get();
+            System.out.printf("%3d s %8d req/s  p50 %7d us  p99 %7d us  failed %d%n", second, interval,
+                              LatencyHistogram.valueAtPercentile(previous, 50.0),
+                              LatencyHistogram.valueAtPercentile(previous, 99.0), failures - lastFailed);
+            lastFailed = failures;
+        }
+        long elapsed = System.nanoTime() - measureStart;
+        stopped.await(30L, TimeUnit.SECONDS);
+        System.out.printf("total %d ok, %d failed, %.0f req/s, %.1f MB/s%n", succeeded.get(), failed.get(),
+                          succeeded.get() * 1e9 / elapsed, bytes.get() * 1e9 / elapsed / (1 << 20));
+        System.out.printf("latency p50 %d us, p90 %d us, p99 %d us, p99.9 %d us, max %d us%n",
+                          latencies.getValueAtPercentile(50.0), latencies.getValueAtPercentile(90.0),
+                          latencies.getValueAtPercentile(99.0), latencies.getValueAtPercentile(99.9),
+                          latencies.getMax());
+    }
+
+    /**
+     * Send one request, its completion sends the next until deadline
+     */
+    private void send() {
+        if (System.nanoTime() >= deadline) {
+            stopped.countDown();
+            return;
+        }
+        final long start = System.nanoTime();
+        client.execute(new HttpGet(url)).whenComplete(new BiConsumer<HttpResponse, Throwable>() {
+            @Override
+            public void accept(HttpResponse response, Throwable throwable) {
+                if (measuring) {
+                    if (throwable == null && response.getStatusLine().getStatusCode() < 400) {
+                        latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                        succeeded.incrementAndGet();
+                        if (response.getEntity() != null) {
+                            bytes.addAndGet(Math.max(0L, response.getEntity().getContentLength()));
+                        }
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                }
+                send();
+            }
+        });
+    }
+}
@@ -0,0 +1,127 @@
+package com.sample.web;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.util.Arrays;
+
+/**
+ * ProxyServlet on embedded Jetty forwarding to a local server which echoes the raw URI and body it received
+ */
+public class ProxyServletTest extends TestCase {
+    private static final int MAX_BODY_SIZE = 64;
+
+    private HttpServer downstream;
+    private Server     server;
+    private String     url;
+
+    @Override
+    protected void setUp() throws Exception {
+        downstream = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        downstream.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                URI    uri  = exchange.getRequestURI();
+                byte[] body = (uri.getRawPath() + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery()) + " "
+                               + new String(readAll(exchange.getRequestBody()), "UTF-8")).getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "text/plain");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        downstream.start();
+
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+        context.setContextPath("/");
+        context.addEventListener(new WebServices());
+        ServletHolder proxy = new ServletHolder(new ProxyServlet());
+        proxy.setInitParameter("target", "http://127.0.0.1:" + downstream.getAddress().getPort() + "/base/");
+        proxy.setInitParameter("maxBodySize", String.valueOf(MAX_BODY_SIZE));
+        proxy.setAsyncSupported(true);
+        context.addServlet(proxy, "/proxy/*");
+        server = new Server(new InetSocketAddress("127.0.0.1", 0));
+        server.setHandler(context);
+        server.start();
+        url = "http://127.0.0.1:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/proxy";
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stop();
+        downstream.stop(0);
+    }
+
+    public void testForwardsRawPathAndQuery() throws IOException {
+        HttpURLConnection connection = open("/a%20b%2Fc?x=%3F&y=1");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("text/plain", connection.getContentType());
+        assertEquals("/base/a%20b%2Fc?x=%3F&y=1 ", new String(readAll(connection.getInputStream()), "UTF-8"));
+    }
+
+    public void testForwardsBody() throws IOException {
+        HttpURLConnection connection = open("/echo");
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write("hello".getBytes("UTF-8"));
+        }
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("/base/echo hello", new String(readAll(connection.getInputStream()), "UTF-8"));
+    }
+
+    public void testOversizedBodyAnswers413() throws IOException {
+        assertEquals(413, post(false));
+        assertEquals(413, post(true));
+    }
+
+    private int post(boolean chunked) throws IOException {
+        byte[] body = new byte[MAX_BODY_SIZE * 4];
+        Arrays.fill(body, (byte) 'x');
+        HttpURLConnection connection = open("/large");
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        if (chunked) {
+            connection.setChunkedStreamingMode(16);
+        } else {
+            connection.setFixedLengthStreamingMode(body.length);
+        }
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        return connection.getResponseCode();
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url + path).openConnection();
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(10000);
+        return connection;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream bytes  = new ByteArrayOutputStream();
+            byte[]                buffer = new byte[1024];
+            for (int read; (read = stream.read(buffer)) != -1; ) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+    }
+}
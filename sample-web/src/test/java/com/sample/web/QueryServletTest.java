@@ -0,0 +1,57 @@
+package com.sample.web;
+
+import junit.framework.TestCase;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+/**
+ * QueryServlet on embedded Jetty: unknown queries and queries failing before any row. DbAccess can only be
+ * implemented in its own package, so rows are covered by JsonStreamer and DbAccess tests of sample-common.
+ */
+public class QueryServletTest extends TestCase {
+    private Server server;
+    private String url;
+
+    @Override
+    protected void setUp() throws Exception {
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+        context.setContextPath("/");
+        context.addEventListener(new WebServices());
+        ServletHolder query = new ServletHolder(new QueryServlet());
+        query.setAsyncSupported(true);
+        context.addServlet(query, "/query/*");
+        server = new Server(new InetSocketAddress("127.0.0.1", 0));
+        server.setHandler(context);
+        server.start();
+        // Query without access, failing as soon as it runs
+        WebServices.of(context.getServletContext()).register("broken", null, "select 1", 10);
+        url = "http://127.0.0.1:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/query/";
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stop();
+    }
+
+    public void testUnknownQueryAnswers404() throws IOException {
+        assertEquals(404, get("missing"));
+    }
+
+    public void testFailedQueryAnswers500() throws IOException {
+        assertEquals(500, get("broken"));
+    }
+
+    private int get(String name) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url + name).openConnection();
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(10000);
+        return connection.getResponseCode();
+    }
+}
@@ -0,0 +1,211 @@
+package com.sample.web;
+
+import junit.framework.TestCase;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * ResponseWriter against a stub async context whose output stream is made ready or not by the test, the test plays
+ * the container by calling onWritePossible/onTimeout
+ */
+public class ResponseWriterTest extends TestCase {
+    private StubOutputStream out;
+    private AsyncListener    listener;
+    private int              status;
+    private int              resets;
+    private int              completes;
+    private ResponseWriter   writer;
+
+    @Override
+    protected void setUp() {
+        out = new StubOutputStream();
+        status = HttpServletResponse.SC_OK;
+        writer = new ResponseWriter(stubContext(), 4);
+    }
+
+    public void testQueuedChunksWrittenAfterWritePossible() throws IOException {
+        out.ready = false;
+        writer.write(bytes("ab"));
+        writer.write(bytes("cd"));
+        assertNotNull(out.listener);
+        assertEquals("", out.written());
+
+        out.ready = true;
+        writer.onWritePossible();
+        assertEquals("abcd", out.written());
+        assertEquals(0, completes);
+
+        writer.finish();
+        assertEquals(1, completes);
+        assertFalse(writer.isAborted());
+    }
+
+    public void testWritePossibleWhileDrainingIsNotLost() throws IOException {
+        out.ready = false;
+        writer.write(bytes("ab"));
+        // Output gets ready and the container calls back right after the holder of the drain flag saw it not ready
+        out.onNotReady = new Runnable() {
+            @Override
+            public void run() {
+                out.ready = true;
+                writer.onWritePossible();
+            }
+        };
+        writer.write(bytes("cd"));
+        assertEquals("abcd", out.written());
+    }
+
+    public void testFailBeforeFirstWriteSetsStatus() {
+        writer.fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, status);
+        assertEquals(1, resets);
+        assertEquals(1, completes);
+        assertTrue(writer.isAborted());
+        try {
+            writer.write(bytes("ab"));
+            fail("Write after fail should throw");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals("", out.written());
+    }
+
+    public void testFailAfterFirstWriteKeepsStatus() throws IOException {
+        writer.write(bytes("ab"));
+        writer.fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        assertEquals(HttpServletResponse.SC_OK, status);
+        assertEquals(0, resets);
+        assertEquals(1, completes);
+        assertEquals("ab", out.written());
+        writer.fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        assertEquals(1, completes);
+    }
+
+    public void testTimeoutAnswers504AndCancelsUpstream() throws IOException {
+        CompletableFuture<Object> upstream = new CompletableFuture<>();
+        writer.cancelOnAbort(upstream);
+        listener.onTimeout(null);
+        assertEquals(HttpServletResponse.SC_GATEWAY_TIMEOUT, status);
+        assertTrue(upstream.isCancelled());
+        assertTrue(writer.isAborted());
+        assertEquals(1, completes);
+    }
+
+    public void testSendWritesWholeBody() {
+        writer.send(HttpServletResponse.SC_CREATED, "text/plain", bytes("body"));
+        assertEquals(HttpServletResponse.SC_CREATED, status);
+        assertEquals("body", out.written());
+        assertEquals(1, completes);
+    }
+
+    public void testStreamSplitsChunks() throws IOException {
+        byte[] data = new byte[ResponseWriter.CHUNK_SIZE * 2 + 10];
+        Arrays.fill(data, (byte) 'x');
+        OutputStream stream = writer.openStream();
+        stream.write(data);
+        stream.close();
+        assertEquals(data.length, out.bytes.size());
+        assertEquals(3, out.writes);
+        assertEquals(1, completes);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes();
+    }
+
+    private AsyncContext stubContext() {
+        final HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{HttpServletResponse.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "getOutputStream":
+                                return out;
+                            case "setStatus":
+                                status = (Integer) args[0];
+                                return null;
+                            case "reset":
+                                resets++;
+                                status = HttpServletResponse.SC_OK;
+                                return null;
+                            default:
+                                return null;
+                        }
+                    }
+                });
+        return (AsyncContext) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{AsyncContext.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "getResponse":
+                                return response;
+                            case "addListener":
+                                listener = (AsyncListener) args[0];
+                                return null;
+                            case "complete":
+                                completes++;
+                                return null;
+                            default:
+                                return null;
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Output stream ready or not as set by test; onNotReady runs once when isReady answers false
+     */
+    private static class StubOutputStream extends ServletOutputStream {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        boolean                     ready = true;
+        Runnable                    onNotReady;
+        WriteListener               listener;
+        int                         writes;
+
+        @Override
+        public boolean isReady() {
+            if (ready) {
+                return true;
+            }
+            Runnable callback = onNotReady;
+            if (callback != null) {
+                onNotReady = null;
+                callback.run();
+            }
+            return false;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void write(int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) {
+            writes++;
+            bytes.write(data, offset, length);
+        }
+
+        String written() {
+            return new String(bytes.toByteArray());
+        }
+    }
+}